@@ -0,0 +1,311 @@
+package io.jenkins.plugins.graphql;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A request in async mode, answered from another thread.
+ *
+ * Completed exactly once, either by the query or by the container timing it
+ * out first. Once completed the response belongs to the container again and
+ * may already be serving another request, so whatever the query still writes
+ * is refused instead.
+ */
+public class AsyncQuery implements AsyncListener {
+    private static final Logger LOGGER = Logger.getLogger(AsyncQuery.class.getName());
+
+    /**
+     * Writes the response.
+     */
+    public interface Body {
+        void write(HttpServletResponse rsp) throws IOException;
+    }
+
+    private final AsyncContext context;
+    private final HttpServletResponse response;
+    private final HttpServletResponse guarded;
+    private final Runnable onTimeout;
+    /** held while writing to the response and while completing it, so the two never overlap */
+    private final Object lock = new Object();
+    private final AtomicBoolean completed = new AtomicBoolean();
+    private volatile Future<?> task;
+
+    AsyncQuery(@NonNull AsyncContext context, long timeoutMs, @NonNull Runnable onTimeout) {
+        this.context = context;
+        this.response = (HttpServletResponse) context.getResponse();
+        this.guarded = new GuardedResponse(response);
+        this.onTimeout = onTimeout;
+        context.addListener(this);
+        context.setTimeout(timeoutMs);
+    }
+
+    public boolean isCompleted() {
+        return completed.get();
+    }
+
+    /**
+     * The task that will run the query, cancelled if the request times out before it starts.
+     */
+    void setTask(@NonNull Future<?> task) {
+        this.task = task;
+        if (completed.get()) {
+            task.cancel(false);
+        }
+    }
+
+    /**
+     * Writes the response and completes the request, unless it was completed already.
+     */
+    public void run(@NonNull Body body) {
+        if (completed.get()) {
+            return;
+        }
+        try {
+            body.write(guarded);
+        } catch (IOException | RuntimeException e) {
+            if (completed.get()) {
+                LOGGER.log(Level.FINE, "Query finished after its request was completed", e);
+            } else {
+                LOGGER.log(Level.WARNING, "Error processing query", e);
+            }
+        } finally {
+            complete();
+        }
+    }
+
+    /**
+     * @return false if the request had already been completed
+     */
+    private boolean markCompleted() {
+        synchronized (lock) {
+            return completed.compareAndSet(false, true);
+        }
+    }
+
+    private void complete() {
+        if (markCompleted()) {
+            completeContext();
+        }
+    }
+
+    private void completeContext() {
+        try {
+            context.complete();
+        } catch (IllegalStateException e) {
+            LOGGER.log(Level.FINE, "Request was already completed", e);
+        }
+    }
+
+    private void cancelTask() {
+        Future<?> current = task;
+        if (current != null) {
+            current.cancel(false);
+        }
+    }
+
+    @Override
+    public void onTimeout(AsyncEvent event) {
+        if (!markCompleted()) {
+            return;
+        }
+        cancelTask();
+        onTimeout.run();
+        try {
+            if (!response.isCommitted()) {
+                response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE, "GraphQL query timed out");
+            }
+        } catch (IOException | IllegalStateException e) {
+            LOGGER.log(Level.FINE, "Unable to report the timeout", e);
+        } finally {
+            completeContext();
+        }
+    }
+
+    @Override
+    public void onError(AsyncEvent event) {
+        if (markCompleted()) {
+            cancelTask();
+            completeContext();
+        }
+    }
+
+    @Override
+    public void onComplete(AsyncEvent event) {
+        markCompleted();
+        cancelTask();
+    }
+
+    @Override
+    public void onStartAsync(AsyncEvent event) {
+        // not restarted
+    }
+
+    private void checkNotCompleted() {
+        if (completed.get()) {
+            throw new IllegalStateException("Request was already completed");
+        }
+    }
+
+    /**
+     * Refuses to touch the response once the request is completed.
+     */
+    private class GuardedResponse extends HttpServletResponseWrapper {
+        private ServletOutputStream outputStream;
+
+        GuardedResponse(HttpServletResponse response) {
+            super(response);
+        }
+
+        @Override
+        public void setStatus(int sc) {
+            synchronized (lock) {
+                checkNotCompleted();
+                super.setStatus(sc);
+            }
+        }
+
+        @Override
+        public void sendError(int sc) throws IOException {
+            sendError(sc, null);
+        }
+
+        @Override
+        public void sendError(int sc, String msg) throws IOException {
+            synchronized (lock) {
+                checkNotCompleted();
+                if (msg == null) {
+                    super.sendError(sc);
+                } else {
+                    super.sendError(sc, msg);
+                }
+            }
+        }
+
+        @Override
+        public void setHeader(String name, String value) {
+            synchronized (lock) {
+                checkNotCompleted();
+                super.setHeader(name, value);
+            }
+        }
+
+        @Override
+        public void addHeader(String name, String value) {
+            synchronized (lock) {
+                checkNotCompleted();
+                super.addHeader(name, value);
+            }
+        }
+
+        @Override
+        public void setIntHeader(String name, int value) {
+            synchronized (lock) {
+                checkNotCompleted();
+                super.setIntHeader(name, value);
+            }
+        }
+
+        @Override
+        public void setContentType(String type) {
+            synchronized (lock) {
+                checkNotCompleted();
+                super.setContentType(type);
+            }
+        }
+
+        @Override
+        public void setCharacterEncoding(String charset) {
+            synchronized (lock) {
+                checkNotCompleted();
+                super.setCharacterEncoding(charset);
+            }
+        }
+
+        @Override
+        public synchronized ServletOutputStream getOutputStream() throws IOException {
+            if (outputStream == null) {
+                ServletOutputStream delegate;
+                synchronized (lock) {
+                    checkNotCompleted();
+                    delegate = super.getOutputStream();
+                }
+                outputStream = new GuardedOutputStream(delegate);
+            }
+            return outputStream;
+        }
+
+        @Override
+        public PrintWriter getWriter() throws IOException {
+            return new PrintWriter(new OutputStreamWriter(getOutputStream(), getCharacterEncoding()));
+        }
+    }
+
+    private class GuardedOutputStream extends ServletOutputStream {
+        private final ServletOutputStream delegate;
+
+        GuardedOutputStream(ServletOutputStream delegate) {
+            this.delegate = delegate;
+        }
+
+        private void check() throws IOException {
+            if (completed.get()) {
+                throw new IOException("Request was already completed");
+            }
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            synchronized (lock) {
+                check();
+                delegate.write(b);
+            }
+        }
+
+        @Override
+        public void write(@NonNull byte[] b, int off, int len) throws IOException {
+            synchronized (lock) {
+                check();
+                delegate.write(b, off, len);
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            synchronized (lock) {
+                check();
+                delegate.flush();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            synchronized (lock) {
+                check();
+                delegate.close();
+            }
+        }
+
+        @Override
+        public boolean isReady() {
+            return delegate.isReady();
+        }
+
+        @Override
+        public void setWriteListener(WriteListener writeListener) {
+            delegate.setWriteListener(writeListener);
+        }
+    }
+}
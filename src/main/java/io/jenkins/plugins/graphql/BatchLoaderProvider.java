@@ -0,0 +1,95 @@
+package io.jenkins.plugins.graphql;
+
+import hudson.ExtensionList;
+import hudson.ExtensionPoint;
+import jenkins.model.Jenkins;
+import org.dataloader.BatchLoader;
+import org.dataloader.DataLoader;
+import org.dataloader.DataLoaderRegistry;
+import org.kohsuke.stapler.export.Property;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Lets fetches of some properties be collected and resolved together.
+ *
+ * Which provider (if any) handles a property is decided when the schema is
+ * wired. During a query, fetches of those properties are queued on a
+ * {@link DataLoader} created for the request, and handed to the provider's
+ * {@link BatchLoader} once every field at the current level has been visited.
+ *
+ * Plugins whose types are expensive to load one by one can contribute their
+ * own with {@link hudson.Extension}.
+ */
+public abstract class BatchLoaderProvider implements ExtensionPoint {
+    /**
+     * The name the loader is registered under, unique among providers.
+     */
+    @NonNull
+    public String getName() {
+        return getClass().getName();
+    }
+
+    /**
+     * Whether fetches of this property should be batched by this provider.
+     */
+    public abstract boolean isApplicable(@NonNull Property property);
+
+    /**
+     * Loads a batch of fetches, returning values (or exceptions) in the same order.
+     * Called once per request, so the loader may keep state for the request.
+     */
+    @NonNull
+    public abstract BatchLoader<PropertyFetch, Object> createBatchLoader();
+
+    /**
+     * Whether this provider is used at all, checked when the schema is wired
+     * and when a request's loaders are created.
+     */
+    public boolean isEnabled() {
+        return true;
+    }
+
+    /**
+     * The enabled providers.
+     */
+    @NonNull
+    public static List<BatchLoaderProvider> all() {
+        if (Jenkins.getInstanceOrNull() == null) {
+            return Collections.emptyList();
+        }
+        return ExtensionList.lookup(BatchLoaderProvider.class)
+            .stream()
+            .filter(BatchLoaderProvider::isEnabled)
+            .collect(Collectors.toList());
+    }
+
+    /**
+     * The first provider that wants to batch {@code property}.
+     */
+    @CheckForNull
+    public static BatchLoaderProvider forProperty(@NonNull Property property) {
+        for (BatchLoaderProvider provider : all()) {
+            if (provider.isApplicable(property)) {
+                return provider;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * A fresh set of loaders for one request, so nothing loaded is shared between users.
+     */
+    @NonNull
+    public static DataLoaderRegistry newDataLoaderRegistry() {
+        DataLoaderRegistry registry = new DataLoaderRegistry();
+        for (BatchLoaderProvider provider : all()) {
+            registry.register(provider.getName(), DataLoader.newDataLoader(provider.createBatchLoader()));
+        }
+        return registry;
+    }
+}
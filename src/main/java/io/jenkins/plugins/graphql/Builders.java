@@ -22,6 +22,11 @@ import edu.umd.cs.findbugs.annotations.NonNull;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.UnaryOperator;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -32,9 +37,17 @@ public class Builders {
     private static final Logger LOGGER = Logger.getLogger(Builders.class.getName());
     private static final ModelBuilder MODEL_BUILDER = new ModelBuilder();
 
+    /**
+     * Set to true to build the schema on a single thread, for debugging.
+     */
+    @SuppressWarnings("squid:S1444")
+    public static /* non-final for script console */ boolean SERIAL = Boolean.getBoolean(Builders.class.getName() + ".serial");
+    @SuppressWarnings("squid:S1444")
+    public static /* non-final for script console */ int PARALLELISM = Integer.getInteger(Builders.class.getName() + ".parallelism", Runtime.getRuntime().availableProcessors());
+
     private static final String ARG_OFFSET = "offset";
-    private static final String ARG_LIMIT = "limit";
-    private static final String ARG_TYPE = "type";
+    static final String ARG_LIMIT = "limit";
+    private static final String ARG_TYPE = "Type";
     private static final String ARG_ID = "id";
 
     private static String makeClassIdDefintion(final Class<?> clazz) {
@@ -93,10 +106,20 @@ public class Builders {
     }
 
     /*** DONE STATIC */
-    private HashMap<Class<?>, String> graphQLTypes = new HashMap<>();
-    private HashMap<String, Property> propertyMap = new HashMap<>();
+    private Map<Class<?>, String> graphQLTypes = new ConcurrentHashMap<>();
+    private Map<String, Property> propertyMap = new ConcurrentHashMap<>();
     private PriorityQueue<Class<?>> classQueue = new PriorityQueue<>(11, Comparator.comparing(Class::getName));
+    /** Classes discovered while building the current frontier, when building in parallel */
+    private Queue<Class<?>> nextFrontier = null;
+    private Set<Class<?>> enqueued = null;
+    /** Interfaces and abstract classes whose subclasses were added as types */
+    private Set<Class<?>> expandedInterfaces = ConcurrentHashMap.newKeySet();
     private List<Class<?>> extraTopLevelClasses = new ArrayList<>();
+    /** Every class passed to {@link #addExtraTopLevelClasses(List)}, kept across builds */
+    private final Set<Class<?>> topLevelClasses = ConcurrentHashMap.newKeySet();
+    /** Types generated by walking their class, rather than restored from a snapshot */
+    private final AtomicInteger introspectedTypeCount = new AtomicInteger();
+    private String schemaDefinition;
 
     protected String createSchemaClassName(final Class<?> clazz) {
         assert (clazz != null);
@@ -109,7 +132,8 @@ public class Builders {
 
         // interfaces are never exported, so handle them seperately
         if (isInterface) {
-            classQueue.addAll(ClassUtils.findSubclasses(MODEL_BUILDER, clazz));
+            expandedInterfaces.add(clazz);
+            enqueue(ClassUtils.findSubclasses(clazz));
         } else {
             try {
                 MODEL_BUILDER.get(clazz);
@@ -117,10 +141,22 @@ public class Builders {
                 return Scalars.GraphQLString.getName();
             }
         }
-        classQueue.add(clazz);
+        enqueue(Collections.singleton(clazz));
         return ClassUtils.getGraphQLClassName(clazz);
     }
 
+    private void enqueue(Collection<Class<?>> clazzes) {
+        if (nextFrontier == null) {
+            classQueue.addAll(clazzes);
+            return;
+        }
+        for (Class<?> clazz : clazzes) {
+            if (enqueued.add(clazz)) {
+                nextFrontier.add(clazz);
+            }
+        }
+    }
+
     private boolean isInterfaceOrAbstract(Class<?> clazz) {
         return Modifier.isInterface(clazz.getModifiers())
             || Modifier.isAbstract(clazz.getModifiers());
@@ -148,6 +184,7 @@ public class Builders {
         }
 
         graphQLTypes.put(clazz, buildGraphQLTypeFromModel(clazz, isInterface));
+        introspectedTypeCount.incrementAndGet();
     }
 
     static boolean shouldIgnoreClass(final Class clazz) {
@@ -269,6 +306,64 @@ public class Builders {
         return sb.toString();
     }
 
+    /**
+     * Builds the types breadth first, each frontier being split across a
+     * fork join pool. Types are independent of each other and the output is
+     * sorted, so this generates the same schema as the serial path.
+     */
+    private void buildSchemaFromClassesInParallel() {
+        enqueued = ConcurrentHashMap.newKeySet();
+        List<Class<?>> frontier = new ArrayList<>();
+        for (Class<?> clazz : classQueue) {
+            if (enqueued.add(clazz)) {
+                frontier.add(clazz);
+            }
+        }
+        classQueue.clear();
+
+        ForkJoinPool pool = new ForkJoinPool(PARALLELISM);
+        try {
+            while (!frontier.isEmpty()) {
+                nextFrontier = new ConcurrentLinkedQueue<>();
+                final List<Class<?>> current = frontier;
+                pool.submit(() -> current.parallelStream()
+                    .filter(clazz -> clazz != Object.class && clazz != Class.class)
+                    .forEach(this::buildSchemaFromClass)
+                ).get();
+                frontier = new ArrayList<>(nextFrontier);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while building schema", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            pool.shutdown();
+            nextFrontier = null;
+            enqueued = null;
+        }
+    }
+
+    /**
+     * Walks up the hierarchy of a class rather than comparing it against
+     * every other generated type.
+     */
+    private String getImplementsClause(Class<?> clazz) {
+        Set<String> interfaces = new TreeSet<>();
+        for (Class<?> superClazz : Iterables.concat(ClassUtils.getAllSuperClasses(clazz), ClassUtils.getAllInterfaces(clazz))) {
+            if (superClazz != clazz && isInterfaceOrAbstract(superClazz) && this.graphQLTypes.containsKey(superClazz)) {
+                interfaces.add(ClassUtils.getGraphQLClassName(superClazz));
+            }
+        }
+        if (interfaces.isEmpty()) {
+            return "";
+        }
+        return " implements " + String.join(" & ", interfaces);
+    }
+
     private String getFieldNameForRootAction(RootAction action) {
         if (action == null) { return ""; }
         String urlName = action.getUrlName();
@@ -276,13 +371,8 @@ public class Builders {
         return urlName.replaceAll("-", "_").replaceAll("/", "_");
     }
 
-    @SuppressWarnings("rawtypes")
-    public GraphQLSchema buildSchema() {
-        Jenkins j = Jenkins.getInstanceOrNull();
-        if (j == null) { return null; }
-//        Pattern typeToInterface = Pattern.compile("^(?:type|interface) ([a-zA-Z0-9_]+)\\s*%s", Pattern.MULTILINE);
-
-        List<RootAction> rootActions = DescriptorExtensionList
+    private static List<RootAction> getExportedRootActions() {
+        return DescriptorExtensionList
             .lookup(RootAction.class)
             .stream()
             // check to see if its exported
@@ -292,6 +382,21 @@ public class Builders {
             // finally check to see if its restricted at all (Shouldn't be if exported)
             .filter(action -> !Arrays.asList(action.getClass().getAnnotations()).contains(Restricted.class))
             .collect(Collectors.toList());
+    }
+
+    /**
+     * Generates and wires the schema.
+     *
+     * Can be called again after plugins are loaded, in which case only the
+     * classes that weren't seen before are introspected.
+     */
+    @SuppressWarnings("rawtypes")
+    public GraphQLSchema buildSchema() {
+        Jenkins j = Jenkins.getInstanceOrNull();
+        if (j == null) { return null; }
+//        Pattern typeToInterface = Pattern.compile("^(?:type|interface) ([a-zA-Z0-9_]+)\\s*%s", Pattern.MULTILINE);
+
+        List<RootAction> rootActions = getExportedRootActions();
         for (RootAction action : rootActions) {
             classQueue.add(action.getClass());
         }
@@ -314,50 +419,37 @@ public class Builders {
         classQueue.add(Job.class);
         classQueue.add(User.class);
         classQueue.addAll(this.extraTopLevelClasses);
+        this.extraTopLevelClasses.clear();
+        // when building again, pick up newly loaded implementations of interfaces we already know about
+        for (Class<?> clazz : expandedInterfaces) {
+            classQueue.addAll(ClassUtils.findSubclasses(clazz));
+        }
 
-        while (!classQueue.isEmpty()) {
-            final Class clazz = classQueue.poll();
-            if (clazz == Object.class || clazz == Class.class) {
-                continue;
+        if (SERIAL || PARALLELISM <= 1) {
+            while (!classQueue.isEmpty()) {
+                final Class clazz = classQueue.poll();
+                if (clazz == Object.class || clazz == Class.class) {
+                    continue;
+                }
+                this.buildSchemaFromClass(clazz);
             }
-            this.buildSchemaFromClass(clazz);
+        } else {
+            buildSchemaFromClassesInParallel();
         }
 
         StringBuilder sb = new StringBuilder();
-        for (GraphQLScalarType type : new HashSet<GraphQLScalarType>(javaTypesToGraphqlTypes.values())) {
-            sb.append("scalar " + type.getName() + "\n");
+        for (String scalarName : new TreeSet<>(javaTypesToGraphqlTypes.values().stream().map(GraphQLScalarType::getName).collect(Collectors.toSet()))) {
+            sb.append("scalar " + scalarName + "\n");
         }
 
         sb.append("\n");
 
-        Set<String> graphQLTypeStrings = new HashSet<String>();
-        for (Map.Entry<Class<?>, String> graphqlEntry : this.graphQLTypes.entrySet()) {
-            Class<?> interfaceClazz = graphqlEntry.getKey();
-            List<String> interfaces = new LinkedList<>();
-            for (Map.Entry<Class<?>, String> entry1 : this.graphQLTypes.entrySet()) {
-                Class<?> instanceClazz = entry1.getKey();
-                if (interfaceClazz == instanceClazz) {
-                    continue;
-                }
-                if (!isInterfaceOrAbstract(instanceClazz)) {
-                    continue;
-                }
-                if (instanceClazz.isAssignableFrom(interfaceClazz)) {
-                    interfaces.add(ClassUtils.getGraphQLClassName(instanceClazz));
-                }
-            }
-            if (interfaces.size() > 0) {
-                graphQLTypeStrings.add(
-                    String.format(
-                        this.graphQLTypes.get(interfaceClazz),
-                        " implements " + String.join(" & ", interfaces)
-                    )
-                );
-            } else {
-                graphQLTypeStrings.add(
-                    String.format(this.graphQLTypes.get(interfaceClazz), "")
-                );
-            }
+        // sorted so the generated schema is the same from run to run
+        Set<String> graphQLTypeStrings = new LinkedHashSet<>();
+        for (Class<?> clazz : this.graphQLTypes.keySet().stream().sorted(Comparator.comparing(Class::getName)).collect(Collectors.toList())) {
+            graphQLTypeStrings.add(
+                String.format(this.graphQLTypes.get(clazz), getImplementsClause(clazz))
+            );
         }
 
         sb.append(
@@ -367,6 +459,7 @@ public class Builders {
         );
 
         sb.append("\n");
+        sb.append(Connections.getTypeDefinitions(ClassUtils.getGraphQLClassName(AbstractItem.class), ClassUtils.getGraphQLClassName(User.class)));
         sb.append("schema {\n");
         sb.append("  query: QueryType\n");
         sb.append("}\n");
@@ -374,6 +467,7 @@ public class Builders {
         sb.append("type QueryType {\n");
         sb.append("  allItems(offset: Int = 0, limit: Int = 100, Type: String, id: ID): [" + ClassUtils.getGraphQLClassName(AbstractItem.class) + "]\n");
         sb.append("  allUsers(offset: Int = 0, limit: Int = 100, Type: String, id: ID): [" + ClassUtils.getGraphQLClassName(User.class)+ "]\n");
+        sb.append(Connections.getQueryFields());
         for (RootAction action : rootActions) {
             sb.append("  " + getFieldNameForRootAction(action) + ": " + ClassUtils.getGraphQLClassName(action.getClass()) + "\n");
         }
@@ -386,48 +480,136 @@ public class Builders {
         //     e.printStackTrace();
         // }
 
-        TypeDefinitionRegistry typeRegistry = new SchemaParser().parse(sb.toString());
+        this.schemaDefinition = sb.toString();
+
+        return makeExecutableSchema(schemaDefinition, propertyMap, rootActions);
+    }
+
+    /**
+     * Rebuilds a schema from a snapshot written by an earlier {@link #buildSchema()},
+     * skipping the class walk entirely.
+     *
+     * The types are restored along with the schema, so a later {@link #buildSchema()}
+     * on this instance only walks classes the snapshot didn't have.
+     *
+     * @return null if the snapshot refers to classes or properties that no longer exist
+     */
+    public GraphQLSchema buildSchema(SchemaSnapshot snapshot) {
+        Map<String, Property> snapshotProperties = snapshot.resolveProperties(MODEL_BUILDER);
+        if (snapshotProperties == null) {
+            return null;
+        }
+        Map<Class<?>, String> snapshotTypes = snapshot.resolveTypes();
+        if (snapshotTypes == null) {
+            return null;
+        }
+        Set<Class<?>> snapshotInterfaces = snapshot.resolveExpandedInterfaces();
+        if (snapshotInterfaces == null) {
+            return null;
+        }
+        this.schemaDefinition = snapshot.getSchemaDefinition();
+        this.propertyMap = new ConcurrentHashMap<>(snapshotProperties);
+        this.graphQLTypes = new ConcurrentHashMap<>(snapshotTypes);
+        this.expandedInterfaces.addAll(snapshotInterfaces);
+        return makeExecutableSchema(schemaDefinition, propertyMap, getExportedRootActions());
+    }
+
+    private GraphQLSchema makeExecutableSchema(String sdl, Map<String, Property> properties, List<RootAction> rootActions) {
+        TypeDefinitionRegistry typeRegistry = new SchemaParser().parse(sdl);
+        Set<Class<?>> itemClasses = new HashSet<>(topLevelClasses);
+        for (TopLevelItemDescriptor descriptor : DescriptorExtensionList.lookup(TopLevelItemDescriptor.class)) {
+            itemClasses.add(descriptor.clazz);
+        }
+        ItemTypeRegistry itemTypes = new ItemTypeRegistry(itemClasses);
         RuntimeWiring.Builder runtimeWiring = RuntimeWiring.newRuntimeWiring();
         runtimeWiring.type("QueryType", new UnaryOperator<TypeRuntimeWiring.Builder>() {
             @Override
             public TypeRuntimeWiring.Builder apply(TypeRuntimeWiring.Builder builder) {
-                builder.dataFetcher("allItems", getObjectDataFetcher(AbstractItem.class));
-                builder.dataFetcher("allUsers", getObjectDataFetcher(User.class));
+                builder.dataFetcher("allItems", getObjectDataFetcher(AbstractItem.class, itemTypes));
+                builder.dataFetcher("allUsers", getObjectDataFetcher(User.class, itemTypes));
+                builder.dataFetcher("allItemsConnection", env -> Connections.items(
+                    Jenkins.get(),
+                    itemTypes.resolve(env.getArgument(ARG_TYPE), AbstractItem.class),
+                    Connections.getPageSize(env.getArgument(Connections.ARG_FIRST)),
+                    env.getArgument(Connections.ARG_AFTER),
+                    PermissionCache.of(env)
+                ));
+                builder.dataFetcher("allUsersConnection", env -> Connections.users(
+                    User.getAll(),
+                    Connections.getPageSize(env.getArgument(Connections.ARG_FIRST)),
+                    env.getArgument(Connections.ARG_AFTER),
+                    PermissionCache.of(env)
+                ));
                 for (RootAction action : rootActions) {
                     builder.dataFetcher(getFieldNameForRootAction(action), new StaticDataFetcher(action));
                 }
                 return builder;
             }
         });
-        runtimeWiring.wiringFactory(new JenkinsWireingFactory(javaTypesToGraphqlTypes, propertyMap));
+        runtimeWiring.wiringFactory(new JenkinsWireingFactory(javaTypesToGraphqlTypes, properties));
         SchemaGenerator schemaGenerator = new SchemaGenerator();
 
-        this.graphQLTypes = null;
-        this.classQueue = null;
-        this.extraTopLevelClasses = null;
-
         return schemaGenerator.makeExecutableSchema(typeRegistry, runtimeWiring.build());
     }
 
-    private DataFetcher<Object> getObjectDataFetcher(Class<?> defaultClazz) {
+    /**
+     * How many types have been generated, safe to call while a build is running.
+     */
+    public int getBuiltTypeCount() {
+        return graphQLTypes.size();
+    }
+
+    /**
+     * How many types this instance walked a class for, the rest were restored from a snapshot.
+     */
+    public int getIntrospectedTypeCount() {
+        return introspectedTypeCount.get();
+    }
+
+    /**
+     * Class to its type definition, with a {@code %s} left for the implements clause.
+     */
+    public Map<Class<?>, String> getTypeDefinitions() {
+        return Collections.unmodifiableMap(graphQLTypes);
+    }
+
+    /**
+     * Interfaces and abstract classes whose subclasses were added as types.
+     */
+    public Set<Class<?>> getExpandedInterfaces() {
+        return Collections.unmodifiableSet(expandedInterfaces);
+    }
+
+    /**
+     * The SDL the last {@link #buildSchema()} generated.
+     */
+    public String getSchemaDefinition() {
+        return schemaDefinition;
+    }
+
+    /**
+     * Field coordinates ({@code Type#field}) to the stapler property that backs them.
+     */
+    public Map<String, Property> getPropertyMap() {
+        return Collections.unmodifiableMap(propertyMap);
+    }
+
+    private DataFetcher<Object> getObjectDataFetcher(Class<?> defaultClazz, ItemTypeRegistry itemTypes) {
         return dataFetchingEnvironment -> {
             Class<?> clazz = defaultClazz;
             final Jenkins instance = Jenkins.getInstanceOrNull();
             final int offset = (int) dataFetchingEnvironment.getArguments().getOrDefault(ARG_OFFSET, 0);
             final int limit = (int) dataFetchingEnvironment.getArguments().getOrDefault(ARG_LIMIT, 100);
-            final String clazzName = (String) dataFetchingEnvironment.getArguments().getOrDefault(ARG_TYPE, "");
             final String id = (String) dataFetchingEnvironment.getArguments().getOrDefault(ARG_ID, null);
-
-            if (clazzName != null && !clazzName.isEmpty()) {
-                clazz = Class.forName(clazzName);
-            }
+            final PermissionCache permissions = PermissionCache.of(dataFetchingEnvironment);
+            clazz = itemTypes.resolve(dataFetchingEnvironment.getArgument(ARG_TYPE), clazz);
 
             Iterable<?> iterable;
             if (clazz == User.class) {
                 if (id != null && !id.isEmpty()) {
                     return Stream.of(User.get(id, false, Collections.emptyMap()))
                         .filter(Objects::nonNull)
-                        .filter(StreamUtils::isAllowed)
+                        .filter(item -> StreamUtils.isAllowed(item, permissions))
                         .toArray();
                 }
                 iterable = User.getAll();
@@ -439,7 +621,7 @@ public class Builders {
                     }
                     return Stream.of(instance.getItemByFullName(id))
                         .filter(Objects::nonNull)
-                        .filter(StreamUtils::isAllowed)
+                        .filter(item -> StreamUtils.isAllowed(item, permissions))
                         .toArray();
                 }
 
@@ -451,12 +633,13 @@ public class Builders {
             }
             return Lists.newArrayList(slice(iterable, offset, limit))
                 .stream()
-                .filter(StreamUtils::isAllowed)
+                .filter(item -> StreamUtils.isAllowed(item, permissions))
                 .toArray();
         };
     }
 
     public void addExtraTopLevelClasses(final List<Class<?>> clazzes) {
         this.extraTopLevelClasses.addAll(clazzes);
+        this.topLevelClasses.addAll(clazzes);
     }
 }
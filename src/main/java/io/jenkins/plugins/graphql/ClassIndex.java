@@ -0,0 +1,336 @@
+package io.jenkins.plugins.graphql;
+
+import hudson.Extension;
+import hudson.ExtensionList;
+import hudson.ExtensionListListener;
+import hudson.PluginWrapper;
+import hudson.XmlFile;
+import hudson.init.InitMilestone;
+import hudson.init.Initializer;
+import hudson.model.Descriptor;
+import jenkins.model.Jenkins;
+import net.java.sezpoz.Index;
+import net.java.sezpoz.IndexItem;
+import org.apache.commons.io.IOUtils;
+import org.kohsuke.stapler.export.ModelBuilder;
+import org.kohsuke.stapler.export.NotExportableException;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.CodeSource;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Persisted index of every exportable class, per plugin.
+ *
+ * A plugin is indexed the first time it is seen (or after it is upgraded).
+ * The annotation indexes compiled into its jars, stapler's list of
+ * {@code @ExportedBean} classes and the sezpoz list of {@code @Extension}s,
+ * point at the jars (or class directories) that define its exported classes;
+ * every class listed in those is then checked, so that subclasses which
+ * inherit {@code @ExportedBean} without being extensions, like
+ * {@code Cause.UserIdCause}, are found too. After that, loading the index only
+ * needs the class names, so warm starts never read jar contents.
+ */
+public class ClassIndex {
+    private static final Logger LOGGER = Logger.getLogger(ClassIndex.class.getName());
+
+    static final String EXPORTED_BEANS = "META-INF/exposed.stapler-beans";
+    static final String CORE = "core";
+    private static final Pattern ANONYMOUS = Pattern.compile("\\$[0-9]");
+
+    private static ClassIndex instance;
+
+    /**
+     * {@code shortName:version} (or {@code core:version}) to the exportable
+     * classes defined by that plugin.
+     */
+    private final TreeMap<String, TreeSet<String>> entries = new TreeMap<>();
+
+    private ClassIndex() {}
+
+    @NonNull
+    public static synchronized ClassIndex get() {
+        if (instance == null) {
+            instance = load();
+        }
+        return instance;
+    }
+
+    private static XmlFile getConfigFile(Jenkins jenkins) {
+        return new XmlFile(Jenkins.XSTREAM2, new File(jenkins.getRootDir(), ClassIndex.class.getName() + ".xml"));
+    }
+
+    private static ClassIndex load() {
+        Jenkins jenkins = Jenkins.getInstanceOrNull();
+        if (jenkins != null) {
+            XmlFile file = getConfigFile(jenkins);
+            if (file.exists()) {
+                try {
+                    return (ClassIndex) file.read();
+                } catch (IOException | ClassCastException e) {
+                    LOGGER.log(Level.WARNING, "Unable to read class index " + file + ", rebuilding it", e);
+                }
+            }
+        }
+        return new ClassIndex();
+    }
+
+    private static String getKey(PluginWrapper plugin) {
+        return plugin.getShortName() + ":" + plugin.getVersion();
+    }
+
+    private static Map<String, ClassLoader> getClassLoaders(Jenkins jenkins) {
+        Map<String, ClassLoader> classLoaders = new HashMap<>();
+        classLoaders.put(CORE + ":" + Jenkins.VERSION, Jenkins.class.getClassLoader());
+        for (PluginWrapper plugin : jenkins.getPluginManager().getPlugins()) {
+            if (plugin.isActive()) {
+                classLoaders.put(getKey(plugin), plugin.classLoader);
+            }
+        }
+        return classLoaders;
+    }
+
+    /**
+     * Indexes plugins that were installed or upgraded since the last call, and
+     * forgets the ones that are gone.
+     *
+     * @return true if anything changed
+     */
+    public synchronized boolean update() {
+        Jenkins jenkins = Jenkins.getInstanceOrNull();
+        if (jenkins == null) {
+            return false;
+        }
+        Map<String, ClassLoader> classLoaders = getClassLoaders(jenkins);
+
+        boolean changed = entries.keySet().retainAll(classLoaders.keySet());
+        for (Map.Entry<String, ClassLoader> entry : classLoaders.entrySet()) {
+            if (!entries.containsKey(entry.getKey())) {
+                LOGGER.fine("Indexing " + entry.getKey());
+                entries.put(entry.getKey(), scan(entry.getValue()));
+                changed = true;
+            }
+        }
+
+        if (changed) {
+            try {
+                getConfigFile(jenkins).write(this);
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Unable to write class index", e);
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Loads every indexed class from the plugin that defines it.
+     */
+    @NonNull
+    public synchronized Set<Class<?>> getClasses() {
+        update();
+        Jenkins jenkins = Jenkins.getInstanceOrNull();
+        if (jenkins == null) {
+            return Collections.emptySet();
+        }
+
+        Set<Class<?>> classes = new HashSet<>();
+        for (Map.Entry<String, ClassLoader> entry : getClassLoaders(jenkins).entrySet()) {
+            for (String className : entries.getOrDefault(entry.getKey(), new TreeSet<>())) {
+                try {
+                    classes.add(Class.forName(className, false, entry.getValue()));
+                } catch (ClassNotFoundException | LinkageError e) {
+                    LOGGER.log(Level.FINE, "Unable to load indexed class " + className, e);
+                }
+            }
+        }
+        return classes;
+    }
+
+    /**
+     * Finds the exportable classes defined by (and not just visible to) a classloader.
+     */
+    static TreeSet<String> scan(ClassLoader classLoader) {
+        Set<String> candidates = new HashSet<>();
+        try {
+            for (URL url : Collections.list(classLoader.getResources(EXPORTED_BEANS))) {
+                try (InputStream is = url.openStream()) {
+                    for (String line : IOUtils.readLines(is, StandardCharsets.UTF_8)) {
+                        if (!line.trim().isEmpty()) {
+                            candidates.add(line.trim());
+                        }
+                    }
+                }
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Unable to read " + EXPORTED_BEANS, e);
+        }
+        for (IndexItem<Extension, Object> item : Index.load(Extension.class, Object.class, classLoader)) {
+            // Descriptors are usually nested in the class they describe
+            String className = item.className();
+            candidates.add(className);
+            while (className.lastIndexOf('$') > 0) {
+                className = className.substring(0, className.lastIndexOf('$'));
+                candidates.add(className);
+            }
+        }
+
+        ModelBuilder modelBuilder = new ModelBuilder();
+        Set<Class<?>> seen = new HashSet<>();
+        Deque<Class<?>> queue = new ArrayDeque<>();
+        Set<URI> locations = new HashSet<>();
+        for (String className : candidates) {
+            Class<?> clazz = load(className, classLoader);
+            if (clazz != null && clazz.getClassLoader() == classLoader) {
+                queue.add(clazz);
+                URI location = getLocation(clazz);
+                if (location != null) {
+                    locations.add(location);
+                }
+            }
+        }
+        for (URI location : locations) {
+            for (String className : listClasses(location)) {
+                if (!candidates.contains(className)) {
+                    Class<?> clazz = load(className, classLoader);
+                    if (clazz != null) {
+                        queue.add(clazz);
+                    }
+                }
+            }
+        }
+
+        TreeSet<String> exportable = new TreeSet<>();
+        while (!queue.isEmpty()) {
+            Class<?> clazz = queue.poll();
+            if (clazz == null || clazz == Object.class || clazz.getClassLoader() != classLoader || !seen.add(clazz)) {
+                continue;
+            }
+            try {
+                modelBuilder.get(clazz);
+                exportable.add(clazz.getName());
+            } catch (NotExportableException | LinkageError e) {
+                // not something we can build a type for
+            }
+            try {
+                // follow the hierarchy, including type arguments so that
+                // Project<FreeStyleProject, FreeStyleBuild> finds FreeStyleBuild
+                queue.add(clazz.getSuperclass());
+                Type genericSuperclass = clazz.getGenericSuperclass();
+                if (genericSuperclass instanceof ParameterizedType) {
+                    for (Type argument : ((ParameterizedType) genericSuperclass).getActualTypeArguments()) {
+                        if (argument instanceof Class) {
+                            queue.add((Class<?>) argument);
+                        }
+                    }
+                }
+            } catch (LinkageError | RuntimeException e) {
+                LOGGER.log(Level.FINE, "Unable to inspect " + clazz.getName(), e);
+            }
+        }
+        return exportable;
+    }
+
+    @CheckForNull
+    private static Class<?> load(String className, ClassLoader classLoader) {
+        try {
+            return Class.forName(className, false, classLoader);
+        } catch (ClassNotFoundException | LinkageError e) {
+            LOGGER.log(Level.FINE, "Unable to load " + className, e);
+            return null;
+        }
+    }
+
+    /**
+     * The jar or directory a class was loaded from.
+     */
+    @CheckForNull
+    private static URI getLocation(Class<?> clazz) {
+        try {
+            CodeSource codeSource = clazz.getProtectionDomain().getCodeSource();
+            return codeSource == null || codeSource.getLocation() == null ? null : codeSource.getLocation().toURI();
+        } catch (URISyntaxException | SecurityException e) {
+            LOGGER.log(Level.FINE, "Unable to locate " + clazz.getName(), e);
+            return null;
+        }
+    }
+
+    /**
+     * Names of the named (not anonymous) classes in a jar or class directory.
+     */
+    static Set<String> listClasses(URI location) {
+        Set<String> classNames = new HashSet<>();
+        if (!"file".equals(location.getScheme())) {
+            LOGGER.fine("Unable to list classes in " + location);
+            return classNames;
+        }
+        File file = new File(location);
+        try {
+            if (file.isDirectory()) {
+                Path root = file.toPath();
+                try (Stream<Path> paths = Files.walk(root)) {
+                    paths.forEach(path -> addClassName(classNames, root.relativize(path).toString().replace(File.separatorChar, '/')));
+                }
+            } else if (file.isFile()) {
+                try (JarFile jar = new JarFile(file)) {
+                    for (JarEntry entry : Collections.list(jar.entries())) {
+                        addClassName(classNames, entry.getName());
+                    }
+                }
+            }
+        } catch (IOException | UncheckedIOException e) {
+            LOGGER.log(Level.WARNING, "Unable to list classes in " + location, e);
+        }
+        return classNames;
+    }
+
+    private static void addClassName(Set<String> classNames, String path) {
+        if (!path.endsWith(".class") || path.startsWith("META-INF/")) {
+            return;
+        }
+        String className = path.substring(0, path.length() - ".class".length()).replace('/', '.');
+        if (className.endsWith("module-info") || className.endsWith("package-info") || ANONYMOUS.matcher(className).find()) {
+            return;
+        }
+        classNames.add(className);
+    }
+
+    @Initializer(after = InitMilestone.EXTENSIONS_AUGMENTED)
+    public static void listenForDynamicLoads() {
+        ExtensionList.lookup(Descriptor.class).addListener(new ExtensionListListener() {
+            @Override
+            public void onChange() {
+                // a plugin was dynamically loaded
+                if (get().update()) {
+                    ClassUtils.setAllClassesCache(null);
+                }
+            }
+        });
+    }
+}
@@ -1,27 +1,15 @@
 package io.jenkins.plugins.graphql;
 
 import com.google.common.annotations.VisibleForTesting;
-import jenkins.model.Jenkins;
 import org.kohsuke.stapler.export.ModelBuilder;
-import org.reflections8.Reflections;
-import org.reflections8.scanners.ResourcesScanner;
-import org.reflections8.scanners.SubTypesScanner;
-import org.reflections8.util.ClasspathHelper;
-import org.reflections8.util.ConfigurationBuilder;
-import org.reflections8.util.FilterBuilder;
 
-import java.lang.reflect.Field;
-import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
-import java.util.LinkedList;
-import java.util.List;
+import java.util.Map;
 import java.util.Set;
-import java.util.Vector;
-import java.util.logging.Logger;
-import java.util.stream.Collectors;
 
 public class ClassUtils {
-    private static final Logger LOGGER = Logger.getLogger(ClassUtils.class.getName());
     static final String ENHANCER = "$MockitoMock$";
 
     private ClassUtils() {}
@@ -63,94 +51,64 @@ public class ClassUtils {
         return name;
     }
 
+    private static final ModelBuilder MODEL_BUILDER = new ModelBuilder();
+    private static final ClassValue<Boolean> EXPORTABLE = new ClassValue<Boolean>() {
+        @Override
+        protected Boolean computeValue(Class<?> type) {
+            return MODEL_BUILDER.getOrNull(type, null, null) != null;
+        }
+    };
+
+    /**
+     * If stapler can export this class, memoized as looking it up throws for anything that isn't.
+     */
+    public static boolean isExportable(Class<?> clazz) {
+        return EXPORTABLE.get(clazz);
+    }
+
     private static Set<Class<?>> getAllClassesCache = null;
+    private static Map<Class<?>, Set<Class<?>>> subclassesCache = null;
 
     @VisibleForTesting
     public static synchronized  void setAllClassesCache(Set<Class<?>> data) {
         getAllClassesCache = data;
+        subclassesCache = null;
     }
-    private static Set<Class<?>> getAllClasses() {
-        if (getAllClassesCache != null) { return getAllClassesCache; }
-        setAllClassesCache(new HashSet<>());
-
-        List<ClassLoader> classLoadersList = new LinkedList<>();
-        classLoadersList.add(ClasspathHelper.contextClassLoader());
-        classLoadersList.add(ClasspathHelper.staticClassLoader());
-        Jenkins instance = Jenkins.getInstanceOrNull();
-        if (instance != null) {
-            classLoadersList.addAll(
-                instance.getPluginManager().getPlugins()
-                    .stream()
-                    .map(i -> i.classLoader)
-                    .collect(Collectors.toList())
-            );
+    private static synchronized Set<Class<?>> getAllClasses() {
+        if (getAllClassesCache == null) {
+            getAllClassesCache = ClassIndex.get().getClasses();
         }
-
-        try {
-            final Field f = ClassLoader.class.getDeclaredField("classes");
-            boolean oldAccessible = f.isAccessible();
-            f.setAccessible(true);
-            for (ClassLoader classLoader : classLoadersList) {
-                ArrayList<Class<?>> classes =  new ArrayList<>(
-                    (Vector<Class<?>>) f.get(classLoader)
-                );
-                getAllClassesCache.addAll(
-                    classes
-                        .stream()
-                        .filter( clazz -> clazz.getName().toLowerCase().contains("jenkins") || clazz.getName().toLowerCase().contains("hudson"))
-                        .collect(Collectors.toList())
-                );
-            }
-            f.setAccessible(oldAccessible);
-        } catch (NoSuchFieldException | IllegalAccessException e) {
-            LOGGER.info("Unable to use classloader, so falling back to reflections: " + e.getMessage());
-        }
-
-        Reflections reflections = new Reflections(new ConfigurationBuilder()
-            .setScanners(
-                new SubTypesScanner(
-                    false /* don't exclude Object.class */
-                ),
-                new ResourcesScanner()
-            )
-            .setUrls(
-                ClasspathHelper.forClassLoader(
-                    classLoadersList.toArray(
-                        new ClassLoader[0]
-                    )
-                )
-            )
-            .filterInputsBy(
-                new FilterBuilder()
-                    .excludePackage("io.jenkins.cli.shaded")
-                    .includePackage("com.cloudbees")
-                    .includePackage("hudson.model")
-                    .includePackage("hudson.plugins")
-                    .includePackage("io.jenkins")
-                    .includePackage("jenkins.plugins")
-                    .includePackage("org.jenkins")
-                    .includePackage("org.jenkinsci")
-                    .includePackage("org.jenkinsci.plugins.workflow.job")
-            )
-        );
-
-        getAllClassesCache.addAll(reflections.getSubTypesOf(Object.class));
         return getAllClassesCache;
     }
 
-    public static Set<Class<?>> findSubclasses(ModelBuilder modelBuilder, Class<?> interfaceClass) {
-        Set<Class<?>> subClasses = new HashSet<>();
+    /**
+     * Inverts the class hierarchy, mapping every superclass and interface to
+     * the exportable classes that extend or implement it (including itself).
+     */
+    private static synchronized Map<Class<?>, Set<Class<?>>> getSubclasses() {
+        if (subclassesCache != null) {
+            return subclassesCache;
+        }
+        Map<Class<?>, Set<Class<?>>> subclasses = new HashMap<>();
         for (Class<?> clazz : getAllClasses()) {
-            if (interfaceClass.isAssignableFrom(clazz)) {
-                try {
-                    modelBuilder.get(clazz);
-                    subClasses.add(clazz);
-                } catch (org.kohsuke.stapler.export.NotExportableException e) {
-                    // there's no model/export data
-                    // so skip this class
-                }
+            if (!isExportable(clazz)) {
+                continue;
+            }
+            subclasses.computeIfAbsent(clazz, k -> new HashSet<>()).add(clazz);
+            for (Class<?> superClazz : getAllSuperClasses(clazz)) {
+                subclasses.computeIfAbsent(superClazz, k -> new HashSet<>()).add(clazz);
+            }
+            for (Class<?> interfaceClazz : getAllInterfaces(clazz)) {
+                subclasses.computeIfAbsent(interfaceClazz, k -> new HashSet<>()).add(clazz);
             }
         }
-        return subClasses;
+        subclassesCache = subclasses;
+        return subclassesCache;
+    }
+
+    public static Set<Class<?>> findSubclasses(Class<?> interfaceClass) {
+        return Collections.unmodifiableSet(
+            getSubclasses().getOrDefault(interfaceClass, Collections.emptySet())
+        );
     }
 }
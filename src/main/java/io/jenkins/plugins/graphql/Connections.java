@@ -0,0 +1,251 @@
+package io.jenkins.plugins.graphql;
+
+import hudson.model.Item;
+import hudson.model.ItemGroup;
+import hudson.model.User;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Relay style connections over items and users.
+ *
+ * Both are walked in a fixed order (items depth first by name, users by id)
+ * and the cursor is the position in that order, so the next page picks up
+ * where the last one stopped instead of skipping over everything before it.
+ * Permissions are checked as elements are taken, so a page is only short
+ * when there is nothing left.
+ */
+public class Connections {
+    @SuppressWarnings("squid:S1444")
+    public static /* non-final for script console */ int MAX_PAGE_SIZE = Integer.getInteger(Connections.class.getName() + ".maxPageSize", 1000);
+
+    static final String ARG_FIRST = "first";
+    static final String ARG_AFTER = "after";
+
+    private static final String ITEM_CURSOR = "item:";
+    private static final String USER_CURSOR = "user:";
+    private static final Comparator<Item> BY_NAME = Comparator.comparing(Item::getName);
+
+    private Connections() {}
+
+    /**
+     * The SDL for the connection types, and the {@code QueryType} fields using them.
+     */
+    static String getTypeDefinitions(String itemType, String userType) {
+        return "type PageInfo {\n"
+            + "  hasNextPage: Boolean!\n"
+            + "  endCursor: String\n"
+            + "}\n"
+            + "type AllItemsEdge {\n"
+            + "  cursor: String!\n"
+            + "  node: " + itemType + "\n"
+            + "}\n"
+            + "type AllItemsConnection {\n"
+            + "  edges: [AllItemsEdge]\n"
+            + "  pageInfo: PageInfo!\n"
+            + "}\n"
+            + "type AllUsersEdge {\n"
+            + "  cursor: String!\n"
+            + "  node: " + userType + "\n"
+            + "}\n"
+            + "type AllUsersConnection {\n"
+            + "  edges: [AllUsersEdge]\n"
+            + "  pageInfo: PageInfo!\n"
+            + "}\n";
+    }
+
+    static String getQueryFields() {
+        return "  allItemsConnection(first: Int = 100, after: String, Type: String): AllItemsConnection\n"
+            + "  allUsersConnection(first: Int = 100, after: String): AllUsersConnection\n";
+    }
+
+    static String encodeCursor(String prefix, String position) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString((prefix + position).getBytes(StandardCharsets.UTF_8));
+    }
+
+    @CheckForNull
+    static String decodeCursor(String prefix, @CheckForNull String cursor) {
+        if (cursor == null || cursor.isEmpty()) {
+            return null;
+        }
+        String decoded;
+        try {
+            decoded = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid cursor " + cursor);
+        }
+        if (!decoded.startsWith(prefix)) {
+            throw new IllegalArgumentException("Invalid cursor " + cursor);
+        }
+        return decoded.substring(prefix.length());
+    }
+
+    static int getPageSize(@CheckForNull Integer first) {
+        if (first == null) {
+            return 100;
+        }
+        if (first < 0) {
+            throw new IllegalArgumentException("first must not be negative");
+        }
+        return Math.min(first, MAX_PAGE_SIZE);
+    }
+
+    /**
+     * Takes up to {@code first} elements, and one more to know if there is a next page.
+     */
+    static <T> Map<String, Object> page(Iterator<T> iterator, int first, Predicate<T> filter, Function<T, String> cursor) {
+        List<Map<String, Object>> edges = new ArrayList<>(Math.min(first, 100));
+        String endCursor = null;
+        boolean hasNextPage = false;
+        while (iterator.hasNext()) {
+            T node = iterator.next();
+            if (!filter.test(node)) {
+                continue;
+            }
+            if (edges.size() == first) {
+                hasNextPage = true;
+                break;
+            }
+            endCursor = cursor.apply(node);
+            Map<String, Object> edge = new LinkedHashMap<>();
+            edge.put("cursor", endCursor);
+            edge.put("node", node);
+            edges.add(edge);
+        }
+
+        Map<String, Object> pageInfo = new LinkedHashMap<>();
+        pageInfo.put("hasNextPage", hasNextPage);
+        pageInfo.put("endCursor", endCursor);
+        Map<String, Object> connection = new LinkedHashMap<>();
+        connection.put("edges", edges);
+        connection.put("pageInfo", pageInfo);
+        return connection;
+    }
+
+    static Map<String, Object> items(ItemGroup<?> root, Class<?> clazz, int first, @CheckForNull String after, @CheckForNull PermissionCache permissions) {
+        return page(
+            new ItemWalker(root, decodeCursor(ITEM_CURSOR, after), permissions),
+            first,
+            item -> clazz.isInstance(item) && StreamUtils.isAllowed(item, permissions),
+            item -> encodeCursor(ITEM_CURSOR, item.getFullName())
+        );
+    }
+
+    static Map<String, Object> users(Collection<User> all, int first, @CheckForNull String after, @CheckForNull PermissionCache permissions) {
+        List<User> users = new ArrayList<>(all);
+        users.sort(Comparator.comparing(User::getId));
+
+        int start = 0;
+        String afterId = decodeCursor(USER_CURSOR, after);
+        if (afterId != null) {
+            // first user whose id sorts after the cursor
+            int low = 0;
+            int high = users.size();
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (users.get(middle).getId().compareTo(afterId) <= 0) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            start = low;
+        }
+        return page(
+            users.subList(start, users.size()).iterator(),
+            first,
+            user -> StreamUtils.isAllowed(user, permissions),
+            user -> encodeCursor(USER_CURSOR, user.getId())
+        );
+    }
+
+    /**
+     * Every item under a group, parents before children and siblings by name,
+     * optionally starting after a given full name.
+     */
+    static class ItemWalker implements Iterator<Item> {
+        private final Deque<Iterator<Item>> stack = new ArrayDeque<>();
+        private final PermissionCache permissions;
+        private Item next;
+
+        ItemWalker(ItemGroup<?> root, @CheckForNull String afterFullName, @CheckForNull PermissionCache permissions) {
+            this.permissions = permissions;
+            if (afterFullName == null) {
+                stack.push(getChildren(root).iterator());
+                return;
+            }
+
+            // skip straight to the cursor, one level at a time
+            String[] path = afterFullName.split("/");
+            ItemGroup<?> group = root;
+            for (int i = 0; i < path.length && group != null; i++) {
+                List<Item> children = getChildren(group);
+                int position = 0;
+                while (position < children.size() && children.get(position).getName().compareTo(path[i]) < 0) {
+                    position++;
+                }
+                Item match = position < children.size() && children.get(position).getName().equals(path[i]) ? children.get(position) : null;
+                stack.push(children.subList(match == null ? position : position + 1, children.size()).iterator());
+
+                group = match instanceof ItemGroup && StreamUtils.isAllowed(match, permissions) ? (ItemGroup<?>) match : null;
+                if (group != null && i == path.length - 1) {
+                    // the cursor itself was returned, but not its children
+                    stack.push(getChildren(group).iterator());
+                }
+            }
+        }
+
+        private static List<Item> getChildren(ItemGroup<?> group) {
+            Collection<? extends Item> items = group.getItems();
+            if (items == null || items.isEmpty()) {
+                return Collections.emptyList();
+            }
+            List<Item> children = new ArrayList<>(items);
+            children.sort(BY_NAME);
+            return children;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (next == null && !stack.isEmpty()) {
+                Iterator<Item> top = stack.peek();
+                if (!top.hasNext()) {
+                    stack.pop();
+                    continue;
+                }
+                Item item = top.next();
+                // also answers the permission check when the item itself is filtered
+                if (item instanceof ItemGroup && StreamUtils.isAllowed(item, permissions)) {
+                    stack.push(getChildren((ItemGroup<?>) item).iterator());
+                }
+                next = item;
+            }
+            return next != null;
+        }
+
+        @Override
+        public Item next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Item item = next;
+            next = null;
+            return item;
+        }
+    }
+}
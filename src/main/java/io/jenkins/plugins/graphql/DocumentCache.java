@@ -0,0 +1,130 @@
+package io.jenkins.plugins.graphql;
+
+import graphql.ExecutionInput;
+import graphql.execution.preparsed.PreparsedDocumentEntry;
+import graphql.execution.preparsed.PreparsedDocumentProvider;
+import graphql.language.Document;
+import graphql.language.OperationDefinition;
+import graphql.parser.InvalidSyntaxException;
+import graphql.parser.Parser;
+import org.kohsuke.stapler.export.Exported;
+import org.kohsuke.stapler.export.ExportedBean;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Least recently used cache of parsed and validated queries, for one schema.
+ *
+ * Bounded by entry count and by the total length of the cached query text,
+ * which the size of a parsed document grows with. Queries bigger than a
+ * tenth of that are never cached.
+ */
+@ExportedBean
+public class DocumentCache implements PreparsedDocumentProvider {
+    @SuppressWarnings("squid:S1444")
+    public static /* non-final for script console */ int MAX_ENTRIES = Integer.getInteger(DocumentCache.class.getName() + ".maxEntries", 500);
+
+    @SuppressWarnings("squid:S1444")
+    public static /* non-final for script console */ long MAX_QUERY_CHARS = Long.getLong(DocumentCache.class.getName() + ".maxQueryChars", 4 * 1024 * 1024);
+
+    private final LinkedHashMap<String, PreparsedDocumentEntry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long weight;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    @Override
+    public PreparsedDocumentEntry getDocument(ExecutionInput executionInput, Function<ExecutionInput, PreparsedDocumentEntry> parseAndValidateFunction) {
+        String query = executionInput.getQuery();
+        synchronized (this) {
+            PreparsedDocumentEntry entry = entries.get(query);
+            if (entry != null) {
+                hits.incrementAndGet();
+                return entry;
+            }
+        }
+        misses.incrementAndGet();
+
+        // parse outside the lock, two threads may race to parse the same query which is harmless
+        PreparsedDocumentEntry entry = parseAndValidateFunction.apply(executionInput);
+        if (MAX_ENTRIES > 0 && query.length() <= MAX_QUERY_CHARS / 10) {
+            put(query, entry);
+        }
+        return entry;
+    }
+
+    /**
+     * Whether the operation a request runs is a query, rather than a mutation
+     * or a subscription. Answered from the cached document when the query has
+     * been run before, so repeated requests aren't parsed again. Documents that
+     * don't parse count as queries, they fail when run anyway.
+     */
+    public boolean isQuery(@NonNull GraphQLRequest request) {
+        PreparsedDocumentEntry entry;
+        synchronized (this) {
+            entry = entries.get(request.getQuery());
+        }
+        Document document = entry == null ? null : entry.getDocument();
+        if (document == null) {
+            // not run yet, or it didn't validate
+            try {
+                document = new Parser().parseDocument(request.getQuery());
+            } catch (InvalidSyntaxException e) {
+                return true;
+            }
+        }
+        for (OperationDefinition operation : document.getDefinitionsOfType(OperationDefinition.class)) {
+            if ((request.getOperationName().isEmpty() || request.getOperationName().equals(operation.getName()))
+                && operation.getOperation() != OperationDefinition.Operation.QUERY) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private synchronized void put(String query, PreparsedDocumentEntry entry) {
+        if (entries.put(query, entry) == null) {
+            weight += query.length();
+        }
+        Iterator<Map.Entry<String, PreparsedDocumentEntry>> iterator = entries.entrySet().iterator();
+        while ((entries.size() > MAX_ENTRIES || weight > MAX_QUERY_CHARS) && iterator.hasNext()) {
+            weight -= iterator.next().getKey().length();
+            iterator.remove();
+            evictions.incrementAndGet();
+        }
+    }
+
+    @Exported
+    public synchronized int getSize() {
+        return entries.size();
+    }
+
+    /**
+     * Total length of the cached query text.
+     */
+    @Exported
+    public synchronized long getQueryChars() {
+        return weight;
+    }
+
+    @Exported
+    public long getHits() {
+        return hits.get();
+    }
+
+    @Exported
+    public long getMisses() {
+        return misses.get();
+    }
+
+    @Exported
+    public long getEvictions() {
+        return evictions.get();
+    }
+}
@@ -0,0 +1,137 @@
+package io.jenkins.plugins.graphql;
+
+import hudson.security.ACL;
+import hudson.security.ACLContext;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+import jenkins.model.Jenkins;
+import org.acegisecurity.Authentication;
+import org.kohsuke.stapler.export.Exported;
+import org.kohsuke.stapler.export.ExportedBean;
+import org.kohsuke.stapler.export.Property;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reads expensive properties on a pool of their own, so that the build
+ * records and changelogs of every job in a query are loaded side by side
+ * instead of one after another.
+ *
+ * Each read runs as the user the query runs as. When the pool and its queue
+ * are full, or no root URL is configured, the query's own thread does the
+ * read, as it would without the pool.
+ */
+@ExportedBean
+public class FetchExecutor {
+    private static final FetchExecutor INSTANCE = new FetchExecutor();
+
+    /**
+     * Comma separated properties to read on the pool, either a property name
+     * or {@code fully.qualified.Class#property}. Read when the schema is wired.
+     */
+    @SuppressWarnings("squid:S1444")
+    public static /* non-final for script console */ String EXPENSIVE_PROPERTIES = System.getProperty(FetchExecutor.class.getName() + ".expensiveProperties", "builds,allBuilds,changeSet,changeSets,culprits,artifacts");
+
+    @SuppressWarnings("squid:S1444")
+    public static /* non-final for script console */ int POOL_SIZE = Integer.getInteger(FetchExecutor.class.getName() + ".poolSize", Math.max(2, Runtime.getRuntime().availableProcessors()));
+
+    @SuppressWarnings("squid:S1444")
+    public static /* non-final for script console */ int QUEUE_DEPTH = Integer.getInteger(FetchExecutor.class.getName() + ".queueDepth", 1000);
+
+    private volatile ThreadPoolExecutor executor;
+
+    FetchExecutor() {}
+
+    public static FetchExecutor get() {
+        return INSTANCE;
+    }
+
+    /**
+     * Whether reads of this property should go through the pool.
+     */
+    static boolean isExpensive(@NonNull Property property) {
+        if (EXPENSIVE_PROPERTIES.trim().isEmpty()) {
+            return false;
+        }
+        Set<String> names = new HashSet<>(Arrays.asList(EXPENSIVE_PROPERTIES.trim().split("\\s*,\\s*")));
+        return names.contains(property.name) || names.contains(property.parent.type.getName() + "#" + property.name);
+    }
+
+    /**
+     * Runs {@code read} on the pool as the current user, or right away when
+     * it has to stay on the request thread.
+     */
+    @NonNull
+    public <T> CompletableFuture<T> supply(@NonNull Callable<T> read) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        if (QueryExecutor.isRequestThreadNeeded()) {
+            complete(future, read);
+            return future;
+        }
+        Authentication auth = Jenkins.getAuthentication();
+        getExecutor().execute(() -> {
+            try (ACLContext ignored = ACL.as(auth)) {
+                complete(future, read);
+            }
+        });
+        return future;
+    }
+
+    private static <T> void complete(CompletableFuture<T> future, Callable<T> read) {
+        try {
+            future.complete(read.call());
+        } catch (Exception e) {
+            future.completeExceptionally(e);
+        }
+    }
+
+    private ThreadPoolExecutor getExecutor() {
+        ThreadPoolExecutor current = executor;
+        if (current == null) {
+            synchronized (this) {
+                current = executor;
+                if (current == null) {
+                    int threads = Math.max(1, POOL_SIZE);
+                    current = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<>(Math.max(1, QUEUE_DEPTH)),
+                        new NamingThreadFactory(new DaemonThreadFactory(), "GraphQL property fetcher"),
+                        new ThreadPoolExecutor.CallerRunsPolicy());
+                    current.allowCoreThreadTimeOut(true);
+                    executor = current;
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Reads running right now.
+     */
+    @Exported
+    public int getActive() {
+        ThreadPoolExecutor current = executor;
+        return current == null ? 0 : current.getActiveCount();
+    }
+
+    /**
+     * Reads waiting for a thread.
+     */
+    @Exported
+    public int getQueueLength() {
+        ThreadPoolExecutor current = executor;
+        return current == null ? 0 : current.getQueue().size();
+    }
+
+    @Exported
+    public long getCompleted() {
+        ThreadPoolExecutor current = executor;
+        return current == null ? 0 : current.getCompletedTaskCount();
+    }
+}
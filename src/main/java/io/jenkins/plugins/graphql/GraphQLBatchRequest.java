@@ -0,0 +1,52 @@
+package io.jenkins.plugins.graphql;
+
+import io.jenkins.plugins.graphql.json.JsonParseException;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The operations in one HTTP request: a single one, or a JSON array of them
+ * to be answered with an array of results in the same order.
+ */
+public class GraphQLBatchRequest {
+    private final List<GraphQLRequest> requests;
+    private final boolean batch;
+
+    private GraphQLBatchRequest(List<GraphQLRequest> requests, boolean batch) {
+        this.requests = requests;
+        this.batch = batch;
+    }
+
+    static GraphQLBatchRequest single(@NonNull GraphQLRequest request) {
+        return new GraphQLBatchRequest(Collections.singletonList(request), false);
+    }
+
+    static GraphQLBatchRequest batch(@NonNull List<GraphQLRequest> requests) {
+        return new GraphQLBatchRequest(Collections.unmodifiableList(requests), true);
+    }
+
+    @NonNull
+    public List<GraphQLRequest> getRequests() {
+        return requests;
+    }
+
+    /**
+     * Whether the client sent an array, and expects one back.
+     */
+    public boolean isBatch() {
+        return batch;
+    }
+
+    /**
+     * @throws JsonParseException if the client sent an array
+     */
+    @NonNull
+    public GraphQLRequest getSingle() throws JsonParseException {
+        if (batch) {
+            throw new JsonParseException("Expected a JSON object");
+        }
+        return requests.get(0);
+    }
+}
@@ -0,0 +1,53 @@
+package io.jenkins.plugins.graphql;
+
+import graphql.ExecutionInput;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * One operation as sent by a client, whatever the transport looked like.
+ */
+public class GraphQLRequest {
+    private final String query;
+    private final String operationName;
+    private final Map<String, Object> variables;
+    private final Map<String, Object> extensions;
+
+    public GraphQLRequest(@CheckForNull String query, @CheckForNull String operationName, @CheckForNull Map<String, Object> variables, @CheckForNull Map<String, Object> extensions) {
+        this.query = query == null ? "" : query;
+        this.operationName = operationName == null ? "" : operationName;
+        this.variables = variables == null ? Collections.emptyMap() : variables;
+        this.extensions = extensions == null ? Collections.emptyMap() : extensions;
+    }
+
+    @NonNull
+    public String getQuery() {
+        return query;
+    }
+
+    @NonNull
+    public String getOperationName() {
+        return operationName;
+    }
+
+    @NonNull
+    public Map<String, Object> getVariables() {
+        return variables;
+    }
+
+    @NonNull
+    public Map<String, Object> getExtensions() {
+        return extensions;
+    }
+
+    public ExecutionInput.Builder toExecutionInput() {
+        return ExecutionInput
+            .newExecutionInput()
+            .query(query)
+            .operationName(operationName)
+            .variables(variables);
+    }
+}
@@ -0,0 +1,316 @@
+package io.jenkins.plugins.graphql;
+
+import io.jenkins.plugins.graphql.json.JsonParseException;
+import io.jenkins.plugins.graphql.json.JsonStreamReader;
+import org.apache.commons.io.IOUtils;
+
+import javax.servlet.ReadListener;
+import javax.servlet.ServletInputStream;
+import javax.servlet.http.HttpServletRequest;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Turns a request into a {@link GraphQLRequest}.
+ *
+ * Supports {@code application/json} bodies, {@code application/graphql}
+ * bodies (the query, with anything else in the query string) and plain
+ * parameters, form encoded or in the query string. {@code variables} is
+ * read in all three. A JSON body may also be an array of operations.
+ */
+public class GraphQLRequestDecoder {
+    /**
+     * Largest body we will read, checked against Content-Length before reading anything.
+     */
+    @SuppressWarnings("squid:S1444")
+    public static /* non-final for script console */ long MAX_BODY_BYTES = Long.getLong(GraphQLRequestDecoder.class.getName() + ".maxBodyBytes", 1024 * 1024);
+
+    /**
+     * Read bodies with servlet non-blocking IO instead of holding a request thread for slow clients.
+     */
+    @SuppressWarnings("squid:S1444")
+    public static /* non-final for script console */ boolean ASYNC_READ = Boolean.getBoolean(GraphQLRequestDecoder.class.getName() + ".asyncRead");
+
+    /**
+     * Most operations a client may send as one JSON array.
+     */
+    @SuppressWarnings("squid:S1444")
+    public static /* non-final for script console */ int MAX_BATCH_SIZE = Integer.getInteger(GraphQLRequestDecoder.class.getName() + ".maxBatchSize", 20);
+
+    static final String APPLICATION_GRAPHQL = "application/graphql";
+    static final String FORM_URLENCODED = "application/x-www-form-urlencoded";
+
+    private GraphQLRequestDecoder() {}
+
+    /**
+     * The body is bigger than {@link #MAX_BODY_BYTES}.
+     */
+    public static class TooLargeException extends IOException {
+        TooLargeException() {
+            super("Request body is larger than " + MAX_BODY_BYTES + " bytes");
+        }
+    }
+
+    static String getMimeType(HttpServletRequest req) {
+        String contentType = req.getContentType();
+        if (contentType == null) {
+            return "";
+        }
+        int semicolon = contentType.indexOf(';');
+        return (semicolon < 0 ? contentType : contentType.substring(0, semicolon)).trim().toLowerCase(Locale.ENGLISH);
+    }
+
+    private static Charset getCharset(HttpServletRequest req) {
+        String encoding = req.getCharacterEncoding();
+        try {
+            return encoding == null ? StandardCharsets.UTF_8 : Charset.forName(encoding);
+        } catch (IllegalArgumentException e) {
+            return StandardCharsets.UTF_8;
+        }
+    }
+
+    /**
+     * Whether we read the body ourselves, rather than the container parsing it into parameters.
+     */
+    static boolean readsBody(HttpServletRequest req) {
+        if ("GET".equals(req.getMethod())) {
+            // everything is in the query string
+            return false;
+        }
+        if (req.getContentLength() == 0 || FORM_URLENCODED.equals(getMimeType(req))) {
+            return false;
+        }
+        return !(getMimeType(req).isEmpty() && req.getParameter("query") != null);
+    }
+
+    private static void checkContentLength(HttpServletRequest req) throws TooLargeException {
+        if (req.getContentLengthLong() > MAX_BODY_BYTES) {
+            throw new TooLargeException();
+        }
+    }
+
+    /**
+     * Reads a request with a single operation, blocking on the body if there is one.
+     */
+    public static GraphQLRequest decode(HttpServletRequest req) throws IOException {
+        return decodeBatch(req).getSingle();
+    }
+
+    /**
+     * Reads the request, blocking on the body if there is one.
+     */
+    public static GraphQLBatchRequest decodeBatch(HttpServletRequest req) throws IOException {
+        checkContentLength(req);
+        if (!readsBody(req)) {
+            return GraphQLBatchRequest.single(fromParameters(req));
+        }
+        return decodeBatch(req, new BoundedInputStream(req.getInputStream()));
+    }
+
+    /**
+     * Reads the body with non-blocking IO, the request must already be in async mode.
+     */
+    public static CompletableFuture<GraphQLBatchRequest> decodeBatchAsync(HttpServletRequest req) throws IOException {
+        checkContentLength(req);
+        CompletableFuture<GraphQLBatchRequest> future = new CompletableFuture<>();
+        ServletInputStream inputStream = req.getInputStream();
+        ByteArrayOutputStream body = new ByteArrayOutputStream((int) Math.min(Math.max(req.getContentLengthLong(), 1024), MAX_BODY_BYTES));
+        inputStream.setReadListener(new ReadListener() {
+            private final byte[] chunk = new byte[8192];
+
+            @Override
+            public void onDataAvailable() throws IOException {
+                int read;
+                while (!future.isDone() && inputStream.isReady() && (read = inputStream.read(chunk)) != -1) {
+                    if (body.size() + read > MAX_BODY_BYTES) {
+                        future.completeExceptionally(new TooLargeException());
+                        return;
+                    }
+                    body.write(chunk, 0, read);
+                }
+            }
+
+            @Override
+            public void onAllDataRead() {
+                if (future.isDone()) {
+                    return;
+                }
+                try {
+                    future.complete(decodeBatch(req, new ByteArrayInputStream(body.toByteArray())));
+                } catch (IOException | RuntimeException e) {
+                    future.completeExceptionally(e);
+                }
+            }
+
+            @Override
+            public void onError(Throwable t) {
+                future.completeExceptionally(t);
+            }
+        });
+        return future;
+    }
+
+    static GraphQLRequest decode(HttpServletRequest req, InputStream body) throws IOException {
+        return decodeBatch(req, body).getSingle();
+    }
+
+    static GraphQLBatchRequest decodeBatch(HttpServletRequest req, InputStream body) throws IOException {
+        try (Reader reader = new InputStreamReader(body, getCharset(req))) {
+            if (APPLICATION_GRAPHQL.equals(getMimeType(req))) {
+                return GraphQLBatchRequest.single(new GraphQLRequest(
+                    IOUtils.toString(reader),
+                    req.getParameter("operationName"),
+                    parseVariables(req.getParameter("variables")),
+                    null
+                ));
+            }
+
+            JsonStreamReader jsonReader = new JsonStreamReader(reader);
+            if (jsonReader.isAtEnd()) {
+                return GraphQLBatchRequest.single(fromParameters(req));
+            }
+            Object json = jsonReader.readDocument();
+            if (json == null) {
+                return GraphQLBatchRequest.single(fromParameters(req));
+            }
+            if (json instanceof List) {
+                return fromJsonArray((List<?>) json);
+            }
+            if (!(json instanceof Map)) {
+                throw new JsonParseException("Expected a JSON object");
+            }
+            return GraphQLBatchRequest.single(fromJson((Map<?, ?>) json));
+        }
+    }
+
+    static GraphQLBatchRequest fromJsonArray(List<?> json) throws JsonParseException {
+        if (json.isEmpty()) {
+            throw new JsonParseException("Expected at least one operation");
+        }
+        if (json.size() > MAX_BATCH_SIZE) {
+            throw new JsonParseException("Expected at most " + MAX_BATCH_SIZE + " operations");
+        }
+        List<GraphQLRequest> requests = new ArrayList<>(json.size());
+        for (Object operation : json) {
+            if (!(operation instanceof Map)) {
+                throw new JsonParseException("Expected a JSON object");
+            }
+            requests.add(fromJson((Map<?, ?>) operation));
+        }
+        return GraphQLBatchRequest.batch(requests);
+    }
+
+    static GraphQLRequest fromJson(Map<?, ?> json) throws JsonParseException {
+        return new GraphQLRequest(
+            getString(json, "query"),
+            getString(json, "operationName"),
+            getObject(json, "variables"),
+            getObject(json, "extensions")
+        );
+    }
+
+    private static GraphQLRequest fromParameters(HttpServletRequest req) throws JsonParseException {
+        return new GraphQLRequest(
+            req.getParameter("query"),
+            req.getParameter("operationName"),
+            parseVariables(req.getParameter("variables")),
+            parseVariables(req.getParameter("extensions"))
+        );
+    }
+
+    private static String getString(Map<?, ?> json, String key) throws JsonParseException {
+        Object value = json.get(key);
+        if (value == null || value instanceof String) {
+            return (String) value;
+        }
+        throw new JsonParseException("Expected '" + key + "' to be a string");
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> getObject(Map<?, ?> json, String key) throws JsonParseException {
+        Object value = json.get(key);
+        if (value instanceof String) {
+            // some clients send variables as an encoded string
+            return parseVariables((String) value);
+        }
+        if (value == null || value instanceof Map) {
+            return (Map<String, Object>) value;
+        }
+        throw new JsonParseException("Expected '" + key + "' to be an object");
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> parseVariables(String value) throws JsonParseException {
+        if (value == null || value.trim().isEmpty()) {
+            return null;
+        }
+        Object json;
+        try {
+            json = new JsonStreamReader(new StringReader(value)).readDocument();
+        } catch (JsonParseException e) {
+            throw e;
+        } catch (IOException e) {
+            // not possible reading a string
+            throw new JsonParseException(e.getMessage());
+        }
+        if (json == null || json instanceof Map) {
+            return (Map<String, Object>) json;
+        }
+        throw new JsonParseException("Expected a JSON object");
+    }
+
+    /**
+     * Stops reading once {@link #MAX_BODY_BYTES} have gone by, for bodies without a Content-Length.
+     */
+    private static class BoundedInputStream extends FilterInputStream {
+        private long remaining = MAX_BODY_BYTES;
+
+        BoundedInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1 && --remaining < 0) {
+                throw new TooLargeException();
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = super.read(b, off, len);
+            if (read > 0) {
+                remaining -= read;
+                if (remaining < 0) {
+                    throw new TooLargeException();
+                }
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            throw new IOException("skip not supported");
+        }
+
+        @Override
+        public void close() {
+            // the container owns the request stream
+        }
+    }
+}
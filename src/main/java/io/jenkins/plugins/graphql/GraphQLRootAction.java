@@ -4,37 +4,69 @@ import graphql.ExecutionInput;
 import graphql.ExecutionResult;
 import graphql.GraphQL;
 import graphql.schema.GraphQLSchema;
-import hudson.DescriptorExtensionList;
 import hudson.Extension;
-import hudson.init.Initializer;
-import hudson.init.InitMilestone;
 import hudson.model.Actionable;
+import hudson.model.Api;
 import hudson.model.RootAction;
-import hudson.model.TopLevelItemDescriptor;
-import net.sf.json.JSONArray;
-import net.sf.json.JSONNull;
-import net.sf.json.JSONObject;
-import org.apache.commons.io.IOUtils;
+import hudson.security.ACL;
+import hudson.security.ACLContext;
+import io.jenkins.plugins.graphql.json.JsonParseException;
+import io.jenkins.plugins.graphql.json.JsonStreamWriter;
+import jenkins.model.Jenkins;
+import org.acegisecurity.Authentication;
+import org.dataloader.DataLoaderRegistry;
 import org.kohsuke.stapler.StaplerRequest;
 import org.kohsuke.stapler.StaplerResponse;
-import org.kohsuke.stapler.interceptor.RequirePOST;
+import org.kohsuke.stapler.export.Exported;
 
 import edu.umd.cs.findbugs.annotations.CheckForNull;
 import javax.servlet.ServletException;
-import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
 import java.io.OutputStreamWriter;
-import java.util.HashMap;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.LinkedHashMap;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import java.util.stream.Collectors;
 
 @Extension
 public class GraphQLRootAction extends Actionable implements RootAction {
     private final static Logger LOGGER = Logger.getLogger(GraphQLRootAction.class.getName());
-    private static GraphQL builtSchema;
+
+    /**
+     * How long a request waits for the schema while it is still being built.
+     */
+    @SuppressWarnings("squid:S1444")
+    public static /* non-final for script console */ long SCHEMA_WAIT_MS = Long.getLong(GraphQLRootAction.class.getName() + ".schemaWaitMs", 10000);
+
+    /**
+     * What to tell clients that gave up waiting for the schema.
+     */
+    @SuppressWarnings("squid:S1444")
+    public static /* non-final for script console */ int RETRY_AFTER_SECONDS = Integer.getInteger(GraphQLRootAction.class.getName() + ".retryAfterSeconds", 30);
+
+    /**
+     * Cache-Control for responses to GET. Responses depend on who asked, so
+     * shared caches are kept out unless this is changed, e.g. for an instance
+     * where anonymous users can read everything.
+     */
+    @SuppressWarnings("squid:S1444")
+    public static /* non-final for script console */ String CACHE_CONTROL = System.getProperty(GraphQLRootAction.class.getName() + ".cacheControl", "private, no-cache");
+
+    private static final int SC_TOO_MANY_REQUESTS = 429;
 
     @CheckForNull
     @Override
@@ -54,97 +86,442 @@ public class GraphQLRootAction extends Actionable implements RootAction {
         return "graphql";
     }
 
-    @Initializer(after = InitMilestone.JOB_LOADED)
-    public static void init() {
-        if (!hudson.Main.isUnitTest) {
-            Builders b = new Builders();
-            b.addExtraTopLevelClasses(
-                DescriptorExtensionList.lookup(TopLevelItemDescriptor.class).stream()
-                    .map(d -> d.clazz)
-                    .collect(Collectors.toList())
-            );
-            builtSchema = GraphQL.newGraphQL(b.buildSchema()).build();
-        }
+    public static void setBuiltSchema(GraphQLSchema schema) {
+        SchemaManager.get().setSchema(schema);
     }
 
-    public static void setBuiltSchema(GraphQLSchema schema) {
-        builtSchema = GraphQL.newGraphQL(schema).build();
+    public Api getApi() {
+        return new Api(this);
+    }
+
+    /**
+     * Schema build state, under {@code /graphql/api/json?depth=1}
+     */
+    @Exported
+    public SchemaManager getSchema() {
+        return SchemaManager.get();
+    }
+
+    @Exported
+    public PersistedQueries getPersistedQueries() {
+        return PersistedQueries.get();
+    }
+
+    @Exported
+    public QueryExecutor getExecutor() {
+        return QueryExecutor.get();
+    }
+
+    @Exported
+    public FetchExecutor getFetchExecutor() {
+        return FetchExecutor.get();
     }
 
-    public static String optString(JSONObject json, String key, String defaultValue)
-    {
-        // http://code.google.com/p/android/issues/detail?id=13830
-        if (json.opt(key) instanceof JSONNull)
-            return defaultValue;
-        else
-            return json.optString(key, defaultValue);
+    @Exported
+    public ResponseCompression getCompression() {
+        return ResponseCompression.get();
     }
 
-    @RequirePOST
+    @Exported
+    public ResponseCache getResponseCache() {
+        return ResponseCache.get();
+    }
+
+    @Exported
+    public PermissionCache.Statistics getPermissionCache() {
+        return PermissionCache.getStatistics();
+    }
+
+    /**
+     * Queries can be sent with GET, so that browsers and proxies can cache
+     * them, and revalidate them with {@code If-None-Match}. Mutations and
+     * subscriptions have to be sent with POST.
+     */
     public void doIndex(StaplerRequest req, StaplerResponse rsp) throws IOException {
-        HashMap<String, Object> variables = new HashMap<>();
-        HashMap<String, Object> context = new HashMap<>();
-        String query = "";
-        String operationName = "";
-        Map<String, String[]> parameterMap = req.getParameterMap();
-
-        String body = IOUtils.toString(req.getInputStream(), "UTF-8");
-
-        if ("application/graphql".equals(req.getContentType())) {
-            query = body;
-        } else if (parameterMap.size() > 0) {
-            query = parameterMap.get("query")[0];
-            operationName = parameterMap.get("operationName")[0];
-            // FIXME - variables
-        } else if (!body.isEmpty()) {
-            JSONObject jsonRequest = JSONObject.fromObject(body);
-            query = optString(jsonRequest, "query", "");
-            operationName = optString(jsonRequest, "operationName", "");
-            JSONObject jsonVariables = jsonRequest.optJSONObject("variables");
-            if (jsonVariables != null) {
-                variables = (HashMap<String, Object>) jsonVariables.toBean(HashMap.class);
-            }
-        }
-        LOGGER.info("Query: " + query);
-
-        if (query.isEmpty()) {
+        if (!"GET".equals(req.getMethod()) && !"POST".equals(req.getMethod())) {
+            rsp.setHeader("Allow", "GET, POST");
+            rsp.sendError(HttpServletResponse.SC_METHOD_NOT_ALLOWED);
+            return;
+        }
+        boolean asyncRead = GraphQLRequestDecoder.ASYNC_READ && GraphQLRequestDecoder.readsBody(req);
+        if (!req.isAsyncSupported() || (QueryExecutor.DISABLED && !asyncRead) || QueryExecutor.isRequestThreadNeeded()) {
+            GraphQLBatchRequest request;
+            try {
+                request = GraphQLRequestDecoder.decodeBatch(req);
+            } catch (GraphQLRequestDecoder.TooLargeException | JsonParseException e) {
+                sendDecodeError(rsp, e);
+                return;
+            }
+            execute(request, req, rsp);
+            return;
+        }
+
+        // give the request thread back while the query waits for, and runs on, one of ours
+        Authentication auth = Jenkins.getAuthentication();
+        AsyncQuery async = QueryExecutor.get().start(req.startAsync());
+        CompletableFuture<GraphQLBatchRequest> future;
+        try {
+            if (asyncRead) {
+                future = GraphQLRequestDecoder.decodeBatchAsync(req);
+            } else {
+                future = CompletableFuture.completedFuture(GraphQLRequestDecoder.decodeBatch(req));
+            }
+        } catch (IOException e) {
+            future = new CompletableFuture<>();
+            future.completeExceptionally(e);
+        }
+        future.whenComplete((request, failure) -> {
+            if (failure != null) {
+                async.run(response -> sendDecodeError(response, failure));
+                return;
+            }
+            AsyncQuery.Body query = response -> {
+                try (ACLContext ignored = ACL.as(auth)) {
+                    execute(request, req, response);
+                }
+            };
+            if (QueryExecutor.DISABLED) {
+                async.run(query);
+                return;
+            }
+            try {
+                QueryExecutor.get().execute(async, query);
+            } catch (RejectedExecutionException e) {
+                async.run(response -> {
+                    response.setHeader("Retry-After", String.valueOf(QueryExecutor.RETRY_AFTER_SECONDS));
+                    response.sendError(SC_TOO_MANY_REQUESTS, "Too many GraphQL queries are running");
+                });
+            }
+        });
+    }
+
+    private static void sendDecodeError(HttpServletResponse rsp, Throwable failure) throws IOException {
+        if (failure instanceof GraphQLRequestDecoder.TooLargeException) {
+            rsp.sendError(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE, failure.getMessage());
+        } else if (failure instanceof JsonParseException) {
+            rsp.sendError(HttpServletResponse.SC_BAD_REQUEST, failure.getMessage());
+        } else {
+            LOGGER.log(Level.WARNING, "Unable to read request", failure);
+            rsp.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+        }
+    }
+
+    private void execute(GraphQLBatchRequest batch, HttpServletRequest req, HttpServletResponse rsp) throws IOException {
+        if (!batch.isBatch()) {
+            execute(batch.getRequests().get(0), req, rsp);
+            return;
+        }
+
+        GraphQL builtSchema = awaitSchema(rsp);
+        if (builtSchema == null) {
+            return;
+        }
+        // started one after the other, but each only holds the thread until it waits on a
+        // slow field, and they share permission decisions, loaders and one cost allowance
+        RequestContext context = new RequestContext();
+        DataLoaderRegistry registry = BatchLoaderProvider.newDataLoaderRegistry();
+        List<CompletableFuture<OperationResponse>> results = new ArrayList<>();
+        for (GraphQLRequest request : batch.getRequests()) {
+            results.add(executeOperation(request, builtSchema, new RequestContext(context), registry));
+        }
+
+        rsp.setContentType("application/json;charset=UTF-8");
+        try (Writer writer = new OutputStreamWriter(ResponseCompression.get().open(req, rsp, -1), StandardCharsets.UTF_8)) {
+            writer.write('[');
+            for (int i = 0; i < results.size(); i++) {
+                if (i > 0) {
+                    writer.write(',');
+                }
+                results.get(i).join().writeTo(writer);
+            }
+            writer.write(']');
+        }
+    }
+
+    /**
+     * The response to one operation of a batch, written when its turn comes.
+     */
+    static final class OperationResponse {
+        private final String json;
+        private final Map<String, Object> specification;
+        private final String cacheKey;
+        private final Set<ResponseCache.Dependency> dependencies;
+        private final long[] generations;
+
+        OperationResponse(String json) {
+            this(json, null, null, null, null);
+        }
+
+        private OperationResponse(String json, Map<String, Object> specification, String cacheKey, Set<ResponseCache.Dependency> dependencies, long[] generations) {
+            this.json = json;
+            this.specification = specification;
+            this.cacheKey = cacheKey;
+            this.dependencies = dependencies;
+            this.generations = generations;
+        }
+
+        /**
+         * Streams the response, and caches it if it is short enough.
+         */
+        void writeTo(Writer out) throws IOException {
+            if (json != null) {
+                out.write(json);
+                return;
+            }
+            ResponseCache.CapturingWriter capture = cacheKey == null ? null : new ResponseCache.CapturingWriter(out);
+            JsonStreamWriter writer = new JsonStreamWriter(capture == null ? out : capture);
+            writer.write(specification);
+            // not closed, the rest of the batch follows
+            writer.flush();
+            String captured = capture == null ? null : capture.getCaptured();
+            if (captured != null) {
+                ResponseCache.get().put(cacheKey, captured, dependencies, generations);
+            }
+        }
+    }
+
+    /**
+     * Runs one operation of a batch. Never fails, an operation that can't be
+     * run is answered with an error of its own, so it doesn't take the rest
+     * of the batch down with it.
+     *
+     * @param context this operation's own, see {@link RequestContext#RequestContext(RequestContext)}
+     */
+    static CompletableFuture<OperationResponse> executeOperation(GraphQLRequest request, GraphQL builtSchema, RequestContext context, DataLoaderRegistry registry) {
+        String cacheKey;
+        long[] generations;
+        CompletableFuture<ExecutionResult> execution;
+        ResponseCache responseCache = ResponseCache.get();
+        try {
+            try {
+                request = PersistedQueries.get().resolve(request);
+            } catch (PersistedQueries.PersistedQueryException e) {
+                return CompletableFuture.completedFuture(new OperationResponse(toJson(Collections.singletonMap("errors", Collections.singletonList(e.toSpecification())))));
+            }
+
+            cacheKey = request.getQuery().isEmpty() ? null : responseCache.getKey(request, Jenkins.getAuthentication());
+            if (cacheKey != null) {
+                String cached = responseCache.get(cacheKey);
+                if (cached != null) {
+                    // only responses without errors are cached
+                    PersistedQueries.get().register(request);
+                    return CompletableFuture.completedFuture(new OperationResponse(cached));
+                }
+            }
+            generations = responseCache.getGenerations();
+
+            ExecutionInput executionInput = request.toExecutionInput()
+                .context(context)
+                .dataLoaderRegistry(registry)
+                .build();
+            execution = builtSchema.executeAsync(executionInput);
+        } catch (IOException | RuntimeException e) {
+            return CompletableFuture.completedFuture(new OperationResponse(getFailureJson(e)));
+        }
+        GraphQLRequest ran = request;
+        return execution.handle((result, failure) -> {
+            try {
+                if (failure != null) {
+                    throw failure instanceof CompletionException && failure.getCause() != null ? failure.getCause() : failure;
+                }
+                if (result.getErrors().isEmpty()) {
+                    PersistedQueries.get().register(ran);
+                }
+                boolean cacheable = cacheKey != null && result.getErrors().isEmpty();
+                return new OperationResponse(null, result.toSpecification(), cacheable ? cacheKey : null, context.getDependencies(), generations);
+            } catch (Throwable e) {
+                return new OperationResponse(getFailureJson(e));
+            }
+        });
+    }
+
+    /**
+     * An operation of a batch that failed, as a response of its own.
+     */
+    private static String getFailureJson(Throwable failure) {
+        Map<String, Object> response;
+        if (failure instanceof graphql.execution.UnknownOperationException) {
+            response = getUnknownOperationResponse((graphql.execution.UnknownOperationException) failure);
+        } else {
+            LOGGER.log(Level.WARNING, "Error processing query", failure);
+            Map<String, Object> error = new LinkedHashMap<>();
+            error.put("message", failure.getMessage() == null ? failure.getClass().getName() : failure.getMessage());
+            error.put("locations", null);
+            error.put("errorType", failure.getClass().getSimpleName());
+            response = new LinkedHashMap<>();
+            response.put("data", null);
+            response.put("errors", Collections.singletonList(error));
+        }
+        try {
+            return toJson(response);
+        } catch (IOException | RuntimeException e) {
+            // only if the message itself can't be written
+            return "{\"data\":null,\"errors\":[{\"message\":\"Error processing query\"}]}";
+        }
+    }
+
+    private static String toJson(Object value) throws IOException {
+        StringWriter json = new StringWriter();
+        try (JsonStreamWriter writer = new JsonStreamWriter(json)) {
+            writer.write(value);
+        }
+        return json.toString();
+    }
+
+    private static Map<String, Object> getUnknownOperationResponse(graphql.execution.UnknownOperationException e) {
+        Map<String, Object> error = new LinkedHashMap<>();
+        error.put("message", e.getMessage());
+        error.put("locations", null);
+        error.put("errorType", e.getClass().getSimpleName());
+
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("data", Collections.emptyMap());
+        response.put("errors", Collections.singletonList(error));
+        LOGGER.log(Level.SEVERE, "Error processing query", e);
+        return response;
+    }
+
+    /**
+     * @return null if the schema isn't ready, in which case the client has been told
+     */
+    @CheckForNull
+    private static GraphQL awaitSchema(HttpServletResponse rsp) throws IOException {
+        GraphQL builtSchema;
+        try {
+            builtSchema = SchemaManager.get().awaitGraphQL(SCHEMA_WAIT_MS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            builtSchema = null;
+        }
+        if (builtSchema == null) {
+            rsp.setHeader("Retry-After", String.valueOf(RETRY_AFTER_SECONDS));
+            rsp.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE, "GraphQL schema is " + SchemaManager.get().getState().name().toLowerCase(Locale.ENGLISH).replace('_', ' '));
+        }
+        return builtSchema;
+    }
+
+    private void execute(GraphQLRequest request, HttpServletRequest req, HttpServletResponse rsp) throws IOException {
+        try {
+            request = PersistedQueries.get().resolve(request);
+        } catch (PersistedQueries.PersistedQueryException e) {
+            rsp.setContentType("application/json;charset=UTF-8");
+            try (JsonStreamWriter writer = new JsonStreamWriter(ResponseCompression.get().open(req, rsp, -1))) {
+                writer.write(Collections.singletonMap("errors", Collections.singletonList(e.toSpecification())));
+            }
+            return;
+        }
+
+        LOGGER.info("Query: " + request.getQuery());
+
+        if (request.getQuery().isEmpty()) {
             rsp.setStatus(HttpServletResponse.SC_OK);
             return;
         }
-        // GraphQLSchema graphQLSchema = buildSchema(sdl);
-        // this.graphQL = GraphQL.newGraphQL(graphQLSchema).build();
 
-        ServletOutputStream outputStream = rsp.getOutputStream();
-        OutputStreamWriter osw = new OutputStreamWriter(outputStream, "UTF-8");
-        rsp.setContentType("application/json");
+        GraphQL builtSchema = awaitSchema(rsp);
+        if (builtSchema == null) {
+            return;
+        }
+
+        boolean get = "GET".equals(req.getMethod());
+        if (get && !SchemaManager.get().getDocumentCache().isQuery(request)) {
+            // GET is neither protected by crumbs nor expected to change anything
+            rsp.setHeader("Allow", "POST");
+            rsp.sendError(HttpServletResponse.SC_METHOD_NOT_ALLOWED, "Mutations and subscriptions must be sent with POST");
+            return;
+        }
+
+        rsp.setContentType("application/json;charset=UTF-8");
+        ResponseCache responseCache = ResponseCache.get();
+        String cacheKey = responseCache.getKey(request, Jenkins.getAuthentication());
+        if (cacheKey != null) {
+            ResponseCache.CachedResponse cached = responseCache.getResponse(cacheKey);
+            if (cached != null) {
+                // only responses without errors are cached
+                PersistedQueries.get().register(request);
+                writeResponse(req, rsp, cached.getResponse(), get ? cached.getETag() : null);
+                return;
+            }
+        }
+        long[] generations = responseCache.getGenerations();
+
+        RequestContext context = new RequestContext();
+        Map<String, Object> response;
+        boolean cacheable;
         try {
-            ExecutionInput executionInput = ExecutionInput
-                .newExecutionInput()
-                .query(query)
-                .operationName(operationName)
+            ExecutionInput executionInput = request.toExecutionInput()
                 .context(context)
-                .variables(variables)
+                .dataLoaderRegistry(BatchLoaderProvider.newDataLoaderRegistry())
                 .build();
 
-            ExecutionResult executionResult = builtSchema.execute(executionInput);
-            osw.write(JSONObject.fromObject(executionResult.toSpecification()).toString());
+            ExecutionResult result = builtSchema.execute(executionInput);
+            response = result.toSpecification();
+            if (result.getErrors().isEmpty()) {
+                PersistedQueries.get().register(request);
+            }
+            cacheable = cacheKey != null && result.getErrors().isEmpty();
         } catch (graphql.execution.UnknownOperationException e) {
-            JSONObject errResp = new JSONObject();
-            errResp.put("data", new JSONObject());
-            JSONObject errJsonObject = new JSONObject();
-            errJsonObject.put("message", e.getMessage());
-            errJsonObject.put("locations", null);
-            errJsonObject.put("errorType", e.getClass().getSimpleName());
-
-            JSONArray errorsList = new JSONArray();
-            errorsList.add(errJsonObject);
-
-            errResp.put("errors", errorsList);
-            osw.write(errResp.toString(2));
-            LOGGER.log(Level.SEVERE, "Error processing query", e);
-        }
-        osw.flush();
-        osw.close();
+            response = getUnknownOperationResponse(e);
+            cacheable = false;
+        }
+        if (get) {
+            // the whole body is needed up front to tag it
+            String json = toJson(response);
+            if (cacheable) {
+                responseCache.put(cacheKey, json, context.getDependencies(), generations);
+            }
+            writeResponse(req, rsp, json, ResponseCache.toETag(json));
+            return;
+        }
+        Writer out = new OutputStreamWriter(ResponseCompression.get().open(req, rsp, -1), StandardCharsets.UTF_8);
+        ResponseCache.CapturingWriter capture = cacheable ? new ResponseCache.CapturingWriter(out) : null;
+        try (JsonStreamWriter writer = new JsonStreamWriter(capture == null ? out : capture)) {
+            writer.write(response);
+        }
+        String captured = capture == null ? null : capture.getCaptured();
+        if (captured != null) {
+            responseCache.put(cacheKey, captured, context.getDependencies(), generations);
+        }
+    }
+
+    /**
+     * @param etag if the response may be cached by the client, its entity tag
+     */
+    private static void writeResponse(HttpServletRequest req, HttpServletResponse rsp, String json, @CheckForNull String etag) throws IOException {
+        // UTF-8 takes at least a byte per char, close enough to decide on compression
+        long size = json.length();
+        if (etag != null) {
+            etag = ResponseCompression.toETag(etag, ResponseCompression.getEncoding(req, size));
+            rsp.setHeader("ETag", etag);
+            rsp.setHeader("Cache-Control", CACHE_CONTROL);
+            rsp.setHeader("Vary", "Authorization, Cookie, Accept-Encoding");
+            if (matches(req.getHeader("If-None-Match"), etag)) {
+                rsp.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+                return;
+            }
+        }
+        try (Writer writer = new OutputStreamWriter(ResponseCompression.get().open(req, rsp, size), StandardCharsets.UTF_8)) {
+            writer.write(json);
+        }
+    }
+
+    /**
+     * Whether an {@code If-None-Match} header lists this tag, compared weakly as RFC 7232 asks.
+     */
+    static boolean matches(@CheckForNull String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            candidate = candidate.trim();
+            if (candidate.startsWith("W/")) {
+                candidate = candidate.substring(2);
+            }
+            if (candidate.equals("*") || candidate.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
     }
 
     public void doClient(StaplerRequest req, StaplerResponse rsp) throws IOException, ServletException {
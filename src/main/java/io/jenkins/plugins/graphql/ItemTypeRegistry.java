@@ -0,0 +1,59 @@
+package io.jenkins.plugins.graphql;
+
+import hudson.model.Item;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The item types the {@code Type} argument may name, by Java class name and
+ * by GraphQL type name.
+ *
+ * Built from the top level item types (and the item types they extend) when
+ * the schema is wired, so that resolving an argument is a map lookup and
+ * never loads a class.
+ */
+public class ItemTypeRegistry {
+    private final Map<String, Class<?>> types;
+
+    ItemTypeRegistry(Collection<Class<?>> topLevelClasses) {
+        Map<String, Class<?>> map = new HashMap<>();
+        Deque<Class<?>> queue = new ArrayDeque<>(topLevelClasses);
+        while (!queue.isEmpty()) {
+            Class<?> clazz = queue.poll();
+            if (clazz == null || !Item.class.isAssignableFrom(clazz) || map.containsKey(clazz.getName())) {
+                continue;
+            }
+            map.put(clazz.getName(), clazz);
+            map.putIfAbsent(ClassUtils.getGraphQLClassName(clazz), clazz);
+            queue.add(clazz.getSuperclass());
+            Collections.addAll(queue, clazz.getInterfaces());
+        }
+        this.types = map;
+    }
+
+    /**
+     * @return {@code defaultClazz} when no type was asked for
+     * @throws IllegalArgumentException for anything that isn't a known item type
+     */
+    @NonNull
+    public Class<?> resolve(@CheckForNull String name, @NonNull Class<?> defaultClazz) {
+        if (name == null || name.isEmpty()) {
+            return defaultClazz;
+        }
+        if (name.equals(defaultClazz.getName()) || name.equals(ClassUtils.getGraphQLClassName(defaultClazz))) {
+            return defaultClazz;
+        }
+        Class<?> clazz = Item.class.isAssignableFrom(defaultClazz) ? types.get(name) : null;
+        if (clazz == null) {
+            throw new IllegalArgumentException("Unknown type " + name);
+        }
+        return clazz;
+    }
+}
@@ -1,23 +1,23 @@
 package io.jenkins.plugins.graphql;
 
-import graphql.TypeResolutionEnvironment;
+import com.google.common.collect.Lists;
 import graphql.language.FieldDefinition;
 import graphql.schema.*;
 import graphql.schema.idl.FieldWiringEnvironment;
 import graphql.schema.idl.InterfaceWiringEnvironment;
 import graphql.schema.idl.ScalarWiringEnvironment;
 import graphql.schema.idl.WiringFactory;
+import org.dataloader.DataLoader;
 import org.kohsuke.stapler.export.Property;
 
 import java.util.Collection;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
 
 public class JenkinsWireingFactory implements WiringFactory {
     private final Map<String, GraphQLScalarType> javaTypesToGraphqlTypes;
     private final Map<String, Property> propertyMap;
+    private volatile SchemaTypeCache typeCache;
 
     public JenkinsWireingFactory(HashMap<String, GraphQLScalarType> javaTypesToGraphqlTypes, Map<String, Property> propertyMap) {
         this.javaTypesToGraphqlTypes = javaTypesToGraphqlTypes;
@@ -52,31 +52,19 @@ public class JenkinsWireingFactory implements WiringFactory {
 
         @Override
         public TypeResolver getTypeResolver(InterfaceWiringEnvironment environment) {
-            return new TypeResolver() {
-                @Override
-                public GraphQLObjectType getType(TypeResolutionEnvironment env) {
-                    Object javaObject = env.getObject();
-                    GraphQLType type = env.getSchema().getType(ClassUtils.getGraphQLClassName(javaObject.getClass()));
-                    if (type == null) { return null; }
+            return env -> getTypeCache(env.getSchema()).getObjectType(env.getObject().getClass());
+        }
 
-                    if (type instanceof GraphQLObjectType) {
-                        return (GraphQLObjectType) type;
-                    }
-                    if (type instanceof GraphQLInterfaceType) {
-                        List<GraphQLObjectType> implementations = env.getSchema().getImplementations((GraphQLInterfaceType) type);
-                        if (implementations.size() == 0) {
-                            return null;
-                        }
-                        return implementations.get(0);
-                    }
-                    return null;
-/*                        Arrays.asList(javaObject.getClass().getInterfaces())
-                            .stream()
-                            .map(i -> env.getSchema().getType(ClassUtils.getGraphQLClassName(i)))
-                            .filter(i -> i != null)
-                            .toArray();*/
-                }
-            };
+        /**
+         * Starts over whenever the resolver is handed a different schema.
+         */
+        SchemaTypeCache getTypeCache(GraphQLSchema schema) {
+            SchemaTypeCache cache = typeCache;
+            if (cache == null || cache.getSchema() != schema) {
+                cache = new SchemaTypeCache(schema);
+                typeCache = cache;
+            }
+            return cache;
         }
 
         @Override
@@ -92,23 +80,47 @@ public class JenkinsWireingFactory implements WiringFactory {
 
         @Override
         public <T> DataFetcherFactory<T> getDataFetcherFactory(FieldWiringEnvironment environment) {
-            return environment1 -> new DataFetcher<T>() {
-                @Override
-                public T get(DataFetchingEnvironment environment1) throws Exception {
-                    FieldDefinition fieldDef = environment.getFieldDefinition();
-                    if ("_class".equals(fieldDef.getName())) {
-                        return (T) environment1.getSource().getClass().getName();
-                    }
-                    String name = environment.getParentType().getName() + "#" + environment.getFieldDefinition().getName();
-                    T value = (T) propertyMap.get(name).getValue(environment1.getSource());
-                    if (value instanceof Collection) {
-                        return (T) ((Collection) value)
-                            .stream()
-                            .filter(i -> environment1.getGraphQLSchema().getType(ClassUtils.getGraphQLClassName(i.getClass())) != null)
-                            .collect(Collectors.toList());
+            // everything is resolved here, once per field, rather than on every fetch
+            if ("_class".equals(environment.getFieldDefinition().getName())) {
+                return DataFetcherFactories.useDataFetcher(environment1 -> (T) environment1.getSource().getClass().getName());
+            }
+            String name = environment.getParentType().getName() + "#" + environment.getFieldDefinition().getName();
+            PropertyAccessor accessor = PropertyAccessor.of(propertyMap.get(name));
+            if (FetchExecutor.isExpensive(accessor.getProperty())) {
+                // siblings and list elements are read side by side
+                return DataFetcherFactories.useDataFetcher(environment1 -> (T) FetchExecutor.get()
+                    .supply(() -> materialize(filter(environment1, accessor.get(environment1.getSource())))));
+            }
+            BatchLoaderProvider batchLoaderProvider = BatchLoaderProvider.forProperty(accessor.getProperty());
+            if (batchLoaderProvider != null) {
+                String loaderName = batchLoaderProvider.getName();
+                return DataFetcherFactories.useDataFetcher(environment1 -> {
+                    DataLoader<PropertyFetch, Object> loader = environment1.getDataLoader(loaderName);
+                    if (loader == null) {
+                        // executed without a registry from this request
+                        return (T) filter(environment1, accessor.get(environment1.getSource()));
                     }
-                    return value;
-                }
-            };
+                    return (T) loader.load(new PropertyFetch(environment1.getSource(), accessor))
+                        .thenApply(value -> filter(environment1, value));
+                });
+            }
+            return DataFetcherFactories.useDataFetcher(environment1 -> (T) filter(environment1, accessor.get(environment1.getSource())));
+        }
+
+        private Object filter(DataFetchingEnvironment environment, Object value) {
+            if (value instanceof Collection) {
+                return getTypeCache(environment.getGraphQLSchema()).filterRepresentable((Collection<?>) value);
+            }
+            return value;
+        }
+
+        /**
+         * Walks a lazy list while still on the fetch pool, where loading it is meant to happen.
+         */
+        private Object materialize(Object value) {
+            if (value instanceof Iterable && !(value instanceof Collection)) {
+                return Lists.newArrayList((Iterable<?>) value);
+            }
+            return value;
         }
 }
@@ -0,0 +1,140 @@
+package io.jenkins.plugins.graphql;
+
+import graphql.schema.DataFetchingEnvironment;
+import hudson.model.Item;
+import hudson.security.ACL;
+import hudson.security.AccessControlled;
+import hudson.security.Permission;
+import org.kohsuke.stapler.export.Exported;
+import org.kohsuke.stapler.export.ExportedBean;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Permission decisions made during one request, which all run as the same user.
+ * Decisions are remembered per {@link ACL}, so items sharing one only ask once.
+ *
+ * Items whose parent was already found unreadable are denied without asking
+ * the authorization strategy, since they can't be reached anyway.
+ */
+public class PermissionCache {
+    private static final Statistics STATISTICS = new Statistics();
+
+    private final Map<Key, Boolean> decisions = new ConcurrentHashMap<>();
+
+    /**
+     * The cache for the request a fetcher is running in.
+     */
+    @CheckForNull
+    public static PermissionCache of(DataFetchingEnvironment environment) {
+        Object context = environment.getContext();
+        return context instanceof RequestContext ? ((RequestContext) context).getPermissionCache() : null;
+    }
+
+    public static Statistics getStatistics() {
+        return STATISTICS;
+    }
+
+    public boolean hasPermission(AccessControlled object, Permission permission) {
+        if (permission == Item.READ && object instanceof Item && isKnownUnreadable(((Item) object).getParent())) {
+            // not remembered, other items may share this one's ACL without sharing its parent
+            STATISTICS.parentSkips.incrementAndGet();
+            return false;
+        }
+
+        Key key = new Key(getOwner(object), permission);
+        Boolean decision = decisions.get(key);
+        if (decision != null) {
+            STATISTICS.hits.incrementAndGet();
+            return decision;
+        }
+
+        STATISTICS.checks.incrementAndGet();
+        decision = object.hasPermission(permission);
+        decisions.put(key, decision);
+        return decision;
+    }
+
+    private boolean isKnownUnreadable(Object parent) {
+        return parent instanceof Item && Boolean.FALSE.equals(decisions.get(new Key(getOwner((Item) parent), Item.READ)));
+    }
+
+    /**
+     * What a decision is remembered for: the object's {@link ACL}.
+     *
+     * An ACL answers for the current user without knowing which object asked,
+     * so every object handing out the same instance gets the same answer. That
+     * is the case for all the items under the built in strategies, which hand
+     * out the root ACL, and for the builds of a job, which hand out the job's.
+     * Strategies that create an ACL per item on every call, like project based
+     * matrix authorization, never hit, the same as if the cache wasn't there.
+     */
+    private static Object getOwner(AccessControlled object) {
+        ACL acl = object.getACL();
+        return acl != null ? acl : object;
+    }
+
+    /**
+     * An ACL (or object without one) and a permission, compared by identity.
+     */
+    private static final class Key {
+        private final Object owner;
+        private final Permission permission;
+
+        Key(Object owner, Permission permission) {
+            this.owner = owner;
+            this.permission = permission;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return owner == key.owner && permission == key.permission;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * System.identityHashCode(owner) + System.identityHashCode(permission);
+        }
+    }
+
+    /**
+     * Totals across all requests.
+     */
+    @ExportedBean
+    public static class Statistics {
+        private final AtomicLong checks = new AtomicLong();
+        private final AtomicLong hits = new AtomicLong();
+        private final AtomicLong parentSkips = new AtomicLong();
+
+        /**
+         * Decisions that had to ask the authorization strategy.
+         */
+        @Exported
+        public long getChecks() {
+            return checks.get();
+        }
+
+        /**
+         * Decisions answered from the cache.
+         */
+        @Exported
+        public long getHits() {
+            return hits.get();
+        }
+
+        /**
+         * Items denied because their parent already was.
+         */
+        @Exported
+        public long getParentSkips() {
+            return parentSkips.get();
+        }
+    }
+}
@@ -0,0 +1,330 @@
+package io.jenkins.plugins.graphql;
+
+import jenkins.model.Jenkins;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.io.FileUtils;
+import org.kohsuke.stapler.export.Exported;
+import org.kohsuke.stapler.export.ExportedBean;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+
+/**
+ * Automatic persisted queries, as understood by Apollo and other clients.
+ *
+ * A client sends {@code extensions.persistedQuery.sha256Hash} without the
+ * query. If we know the hash we run the query it stands for, otherwise we
+ * answer {@code PersistedQueryNotFound} and the client retries with both.
+ * The query is only stored once it has run without errors, so a client can't
+ * fill the store with queries that were never going to work.
+ *
+ * Queries are kept in memory, and optionally under
+ * {@code JENKINS_HOME/graphql-persisted-queries} so they survive restarts.
+ * Both are bounded and drop the least recently used queries first; on disk
+ * that is by when a query was last read from or written to its file.
+ */
+@ExportedBean
+public class PersistedQueries {
+    private static final Logger LOGGER = Logger.getLogger(PersistedQueries.class.getName());
+    private static final PersistedQueries INSTANCE = new PersistedQueries();
+
+    @SuppressWarnings("squid:S1444")
+    public static /* non-final for script console */ boolean DISABLED = Boolean.getBoolean(PersistedQueries.class.getName() + ".disabled");
+
+    @SuppressWarnings("squid:S1444")
+    public static /* non-final for script console */ int MAX_ENTRIES = Integer.getInteger(PersistedQueries.class.getName() + ".maxEntries", 1000);
+
+    /**
+     * Also keep queries on disk, at most {@link #MAX_FILES} of them and
+     * {@link #MAX_DIRECTORY_BYTES} in all.
+     */
+    @SuppressWarnings("squid:S1444")
+    public static /* non-final for script console */ boolean PERSIST_TO_DISK = Boolean.getBoolean(PersistedQueries.class.getName() + ".persistToDisk");
+
+    @SuppressWarnings("squid:S1444")
+    public static /* non-final for script console */ int MAX_FILES = Integer.getInteger(PersistedQueries.class.getName() + ".maxFiles", 10000);
+
+    /**
+     * Longer queries are only kept in memory.
+     */
+    @SuppressWarnings("squid:S1444")
+    public static /* non-final for script console */ int MAX_FILE_BYTES = Integer.getInteger(PersistedQueries.class.getName() + ".maxFileBytes", 64 * 1024);
+
+    @SuppressWarnings("squid:S1444")
+    public static /* non-final for script console */ long MAX_DIRECTORY_BYTES = Long.getLong(PersistedQueries.class.getName() + ".maxDirectoryBytes", 64L * 1024 * 1024);
+
+    static final String EXTENSION = "persistedQuery";
+    static final String DIRECTORY = "graphql-persisted-queries";
+    private static final Pattern SHA256 = Pattern.compile("[0-9a-f]{64}");
+
+    /**
+     * A persisted query request we can't run, sent back to the client as a GraphQL error.
+     */
+    public static class PersistedQueryException extends Exception {
+        private final String code;
+
+        PersistedQueryException(String message, String code) {
+            super(message);
+            this.code = code;
+        }
+
+        public String getCode() {
+            return code;
+        }
+
+        public Map<String, Object> toSpecification() {
+            Map<String, Object> extensions = new LinkedHashMap<>();
+            extensions.put("code", code);
+            Map<String, Object> error = new LinkedHashMap<>();
+            error.put("message", getMessage());
+            error.put("extensions", extensions);
+            return error;
+        }
+    }
+
+    private final LinkedHashMap<String, String> queries = new LinkedHashMap<>(16, 0.75f, true);
+    @CheckForNull
+    private final File directory;
+    /** held while counting, writing and deleting files */
+    private final Object diskLock = new Object();
+    private int fileCount = -1;
+    private long directoryBytes;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong registrations = new AtomicLong();
+    private final AtomicLong fileEvictions = new AtomicLong();
+
+    PersistedQueries() {
+        this(null);
+    }
+
+    /**
+     * @param directory where to keep queries on disk, instead of under JENKINS_HOME
+     */
+    PersistedQueries(@CheckForNull File directory) {
+        this.directory = directory;
+    }
+
+    public static PersistedQueries get() {
+        return INSTANCE;
+    }
+
+    /**
+     * Fills in the query of a persisted query request. New queries are
+     * remembered by {@link #register(GraphQLRequest)}, once they have run.
+     *
+     * @return the request to run, {@code request} itself if it doesn't use persisted queries
+     */
+    @NonNull
+    public GraphQLRequest resolve(@NonNull GraphQLRequest request) throws PersistedQueryException {
+        Object extension = request.getExtensions().get(EXTENSION);
+        if (DISABLED || !(extension instanceof Map)) {
+            return request;
+        }
+        Map<?, ?> persistedQuery = (Map<?, ?>) extension;
+        if (!Integer.valueOf(1).equals(persistedQuery.get("version"))) {
+            throw new PersistedQueryException("PersistedQueryNotSupported", "PERSISTED_QUERY_NOT_SUPPORTED");
+        }
+        Object hashValue = persistedQuery.get("sha256Hash");
+        String hash = hashValue instanceof String ? ((String) hashValue).toLowerCase(Locale.ENGLISH) : "";
+        if (!SHA256.matcher(hash).matches()) {
+            throw new PersistedQueryException("Invalid sha256Hash", "PERSISTED_QUERY_INVALID_HASH");
+        }
+
+        if (request.getQuery().isEmpty()) {
+            String query = lookup(hash);
+            if (query == null) {
+                misses.incrementAndGet();
+                throw new PersistedQueryException("PersistedQueryNotFound", "PERSISTED_QUERY_NOT_FOUND");
+            }
+            hits.incrementAndGet();
+            return new GraphQLRequest(query, request.getOperationName(), request.getVariables(), request.getExtensions());
+        }
+
+        if (!DigestUtils.sha256Hex(request.getQuery()).equals(hash)) {
+            throw new PersistedQueryException("provided sha does not match query", "PERSISTED_QUERY_HASH_MISMATCH");
+        }
+        return request;
+    }
+
+    /**
+     * Remembers the query of a persisted query request that ran without errors.
+     */
+    public void register(@NonNull GraphQLRequest request) {
+        Object extension = request.getExtensions().get(EXTENSION);
+        if (DISABLED || !(extension instanceof Map) || request.getQuery().isEmpty()) {
+            return;
+        }
+        Object hashValue = ((Map<?, ?>) extension).get("sha256Hash");
+        String hash = hashValue instanceof String ? ((String) hashValue).toLowerCase(Locale.ENGLISH) : "";
+        if (SHA256.matcher(hash).matches() && DigestUtils.sha256Hex(request.getQuery()).equals(hash)) {
+            register(hash, request.getQuery());
+        }
+    }
+
+    @CheckForNull
+    private String lookup(String hash) {
+        synchronized (this) {
+            String query = queries.get(hash);
+            if (query != null || !PERSIST_TO_DISK) {
+                return query;
+            }
+        }
+        File file = getFile(hash);
+        if (file == null || !file.isFile()) {
+            return null;
+        }
+        try {
+            String query = FileUtils.readFileToString(file, StandardCharsets.UTF_8);
+            // don't trust the file more than the client
+            if (!DigestUtils.sha256Hex(query).equals(hash)) {
+                return null;
+            }
+            remember(hash, query);
+            // recently used, as far as eviction on disk goes
+            if (!file.setLastModified(System.currentTimeMillis())) {
+                LOGGER.fine("Unable to touch " + file);
+            }
+            return query;
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Unable to read persisted query " + file, e);
+            return null;
+        }
+    }
+
+    private void register(String hash, String query) {
+        if (!remember(hash, query)) {
+            return;
+        }
+        registrations.incrementAndGet();
+        if (PERSIST_TO_DISK) {
+            File file = getFile(hash);
+            byte[] bytes = query.getBytes(StandardCharsets.UTF_8);
+            if (file == null || file.exists() || bytes.length > MAX_FILE_BYTES) {
+                return;
+            }
+            write(file, bytes);
+        }
+    }
+
+    /**
+     * @return true if the query was not already in memory
+     */
+    private synchronized boolean remember(String hash, String query) {
+        if (MAX_ENTRIES <= 0 || queries.put(hash, query) != null) {
+            return false;
+        }
+        while (queries.size() > MAX_ENTRIES) {
+            queries.remove(queries.keySet().iterator().next());
+        }
+        return true;
+    }
+
+    private void write(File file, byte[] bytes) {
+        synchronized (diskLock) {
+            File[] files = null;
+            if (fileCount < 0) {
+                files = listFiles(file.getParentFile());
+                fileCount = files.length;
+                directoryBytes = 0;
+                for (File existing : files) {
+                    directoryBytes += existing.length();
+                }
+            }
+            if (!hasRoomFor(bytes.length)) {
+                makeRoom(files == null ? listFiles(file.getParentFile()) : files, bytes.length);
+                if (!hasRoomFor(bytes.length)) {
+                    return;
+                }
+            }
+            try {
+                FileUtils.writeByteArrayToFile(file, bytes);
+                fileCount++;
+                directoryBytes += bytes.length;
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Unable to write persisted query " + file, e);
+            }
+        }
+    }
+
+    private boolean hasRoomFor(long bytes) {
+        return fileCount < MAX_FILES && directoryBytes + bytes <= MAX_DIRECTORY_BYTES;
+    }
+
+    /**
+     * Deletes the least recently used files until another one of {@code bytes} fits.
+     */
+    private void makeRoom(File[] files, long bytes) {
+        Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+        for (File oldest : files) {
+            if (hasRoomFor(bytes) || bytes > MAX_DIRECTORY_BYTES) {
+                return;
+            }
+            long length = oldest.length();
+            if (oldest.delete()) {
+                fileCount--;
+                directoryBytes -= length;
+                fileEvictions.incrementAndGet();
+            }
+        }
+    }
+
+    private static File[] listFiles(File directory) {
+        File[] files = directory.listFiles((dir, name) -> name.endsWith(".graphql"));
+        return files == null ? new File[0] : files;
+    }
+
+    @CheckForNull
+    private File getFile(String hash) {
+        File parent = directory;
+        if (parent == null) {
+            Jenkins jenkins = Jenkins.getInstanceOrNull();
+            if (jenkins == null) {
+                return null;
+            }
+            parent = new File(jenkins.getRootDir(), DIRECTORY);
+        }
+        return new File(parent, hash + ".graphql");
+    }
+
+    @Exported
+    public synchronized int getSize() {
+        return queries.size();
+    }
+
+    @Exported
+    public long getHits() {
+        return hits.get();
+    }
+
+    @Exported
+    public long getMisses() {
+        return misses.get();
+    }
+
+    @Exported
+    public long getRegistrations() {
+        return registrations.get();
+    }
+
+    /**
+     * Files deleted to make room for newer queries.
+     */
+    @Exported
+    public long getFileEvictions() {
+        return fileEvictions.get();
+    }
+}
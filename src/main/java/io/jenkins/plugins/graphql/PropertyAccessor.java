@@ -0,0 +1,132 @@
+package io.jenkins.plugins.graphql;
+
+import org.kohsuke.stapler.export.Exported;
+import org.kohsuke.stapler.export.Property;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import java.beans.Introspector;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Reads an exported property through a method handle bound when the schema is
+ * wired, instead of going through {@link Property#getValue(Object)}.
+ *
+ * The getter (or field) is found the same way stapler's {@code Model} finds
+ * it; if it can't be, or isn't accessible, the {@link Property} is used as is.
+ */
+final class PropertyAccessor {
+    private static final Logger LOGGER = Logger.getLogger(PropertyAccessor.class.getName());
+    private static final MethodType GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+
+    private final Property property;
+    @CheckForNull
+    private final MethodHandle handle;
+
+    private PropertyAccessor(Property property, @CheckForNull MethodHandle handle) {
+        this.property = property;
+        this.handle = handle;
+    }
+
+    @NonNull
+    static PropertyAccessor of(@NonNull Property property) {
+        MethodHandle handle = null;
+        try {
+            handle = unreflect(property);
+        } catch (IllegalAccessException | RuntimeException e) {
+            // setAccessible throws InaccessibleObjectException on Java 9+ for classes in modules that aren't open
+            LOGGER.log(Level.FINE, "Unable to bind " + property.parent.type.getName() + "#" + property.name, e);
+        }
+        return new PropertyAccessor(property, handle);
+    }
+
+    Property getProperty() {
+        return property;
+    }
+
+    /**
+     * @return true when reads bypass {@link Property#getValue(Object)}
+     */
+    boolean isBound() {
+        return handle != null;
+    }
+
+    Object get(Object source) throws Exception {
+        if (handle == null) {
+            return property.getValue(source);
+        }
+        try {
+            return (Object) handle.invokeExact(source);
+        } catch (Exception | Error e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new InvocationTargetException(t);
+        }
+    }
+
+    /**
+     * Same naming rules as stapler's {@code MethodProperty}.
+     */
+    private static String getPropertyName(Method method, Exported exported) {
+        if (exported.name().length() > 1) {
+            return exported.name();
+        }
+        String name = method.getName();
+        if (name.startsWith("get")) {
+            name = name.substring(3);
+        } else if (name.startsWith("is")) {
+            name = name.substring(2);
+        }
+        return Introspector.decapitalize(name);
+    }
+
+    @CheckForNull
+    private static MethodHandle unreflect(Property property) throws IllegalAccessException {
+        Class<?> owner = property.parent.type;
+        MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+
+        for (Method method : owner.getMethods()) {
+            if (method.getDeclaringClass() != owner || method.isSynthetic() || method.isBridge() || method.getParameterCount() != 0) {
+                continue;
+            }
+            Exported exported = method.getAnnotation(Exported.class);
+            if (exported != null && property.name.equals(getPropertyName(method, exported))) {
+                if (Modifier.isStatic(method.getModifiers())) {
+                    return null;
+                }
+                if (!Modifier.isPublic(owner.getModifiers())) {
+                    // public method on a non public class, the public lookup can't see it
+                    method.setAccessible(true);
+                    lookup = MethodHandles.lookup();
+                }
+                return lookup.unreflect(method).asType(GETTER_TYPE);
+            }
+        }
+
+        for (Field field : owner.getFields()) {
+            if (field.getDeclaringClass() != owner) {
+                continue;
+            }
+            Exported exported = field.getAnnotation(Exported.class);
+            if (exported != null && property.name.equals(exported.name().length() > 1 ? exported.name() : field.getName())) {
+                if (Modifier.isStatic(field.getModifiers())) {
+                    return null;
+                }
+                if (!Modifier.isPublic(owner.getModifiers())) {
+                    field.setAccessible(true);
+                    lookup = MethodHandles.lookup();
+                }
+                return lookup.unreflectGetter(field).asType(GETTER_TYPE);
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,55 @@
+package io.jenkins.plugins.graphql;
+
+import org.kohsuke.stapler.export.Property;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+
+/**
+ * One read of an exported property, the key handed to a batch loader.
+ *
+ * Two fetches are equal when they read the same property of the same object,
+ * so an object reached through several paths in one query is only read once.
+ */
+public final class PropertyFetch {
+    private final Object source;
+    private final PropertyAccessor accessor;
+
+    PropertyFetch(@NonNull Object source, @NonNull PropertyAccessor accessor) {
+        this.source = source;
+        this.accessor = accessor;
+    }
+
+    /**
+     * The object the property is read from.
+     */
+    @NonNull
+    public Object getSource() {
+        return source;
+    }
+
+    @NonNull
+    public Property getProperty() {
+        return accessor.getProperty();
+    }
+
+    /**
+     * Reads the property.
+     */
+    public Object fetch() throws Exception {
+        return accessor.get(source);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof PropertyFetch)) {
+            return false;
+        }
+        PropertyFetch that = (PropertyFetch) o;
+        return source == that.source && accessor == that.accessor;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * System.identityHashCode(source) + System.identityHashCode(accessor);
+    }
+}
@@ -0,0 +1,245 @@
+package io.jenkins.plugins.graphql;
+
+import graphql.ExecutionResult;
+import graphql.ExecutionResultImpl;
+import graphql.analysis.QueryTraverser;
+import graphql.analysis.QueryVisitorFieldEnvironment;
+import graphql.analysis.QueryVisitorStub;
+import graphql.execution.AbortExecutionException;
+import graphql.execution.ExecutionContext;
+import graphql.execution.instrumentation.InstrumentationContext;
+import graphql.execution.instrumentation.InstrumentationState;
+import graphql.execution.instrumentation.SimpleInstrumentation;
+import graphql.execution.instrumentation.parameters.InstrumentationExecuteOperationParameters;
+import graphql.execution.instrumentation.parameters.InstrumentationExecutionParameters;
+import graphql.schema.GraphQLTypeUtil;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Estimates what a query will cost before any of it runs, and rejects it if
+ * that is more than we're willing to do.
+ *
+ * Every field costs one, times the size of each list above it. A list's size
+ * is its {@code limit} or {@code first} argument when it has one, or else a
+ * guess: {@link #LARGE_LIST_SIZE} for the fields in {@link #LARGE_FIELDS},
+ * which can be as long as a job's history, and {@link #DEFAULT_LIST_SIZE} for
+ * anything else. Introspection is free.
+ *
+ * The operations of a batch share one {@link RequestContext}, and with it
+ * one allowance of {@link #MAX_COST}: each is charged its estimate before it
+ * runs, and rejected once the batch as a whole would go over.
+ *
+ * The estimate is reported under {@code extensions.cost} of every response.
+ */
+public class QueryCostInstrumentation extends SimpleInstrumentation {
+    @SuppressWarnings("squid:S1444")
+    public static /* non-final for script console */ long MAX_COST = Long.getLong(QueryCostInstrumentation.class.getName() + ".maxCost", 100_000);
+
+    @SuppressWarnings("squid:S1444")
+    public static /* non-final for script console */ int MAX_DEPTH = Integer.getInteger(QueryCostInstrumentation.class.getName() + ".maxDepth", 15);
+
+    @SuppressWarnings("squid:S1444")
+    public static /* non-final for script console */ int DEFAULT_LIST_SIZE = Integer.getInteger(QueryCostInstrumentation.class.getName() + ".defaultListSize", 10);
+
+    @SuppressWarnings("squid:S1444")
+    public static /* non-final for script console */ int LARGE_LIST_SIZE = Integer.getInteger(QueryCostInstrumentation.class.getName() + ".largeListSize", 100);
+
+    /**
+     * Comma separated names of list fields that are usually long.
+     */
+    @SuppressWarnings("squid:S1444")
+    public static /* non-final for script console */ String LARGE_FIELDS = System.getProperty(QueryCostInstrumentation.class.getName() + ".largeFields", "builds,allBuilds,jobs,items");
+
+    static final String EXTENSION = "cost";
+
+    /**
+     * The cost of the operation being executed, once it is known.
+     */
+    static class CostState implements InstrumentationState {
+        private volatile QueryCost cost;
+    }
+
+    /**
+     * What an operation was estimated to cost.
+     */
+    static class QueryCost {
+        private final long cost;
+        private final int depth;
+
+        QueryCost(long cost, int depth) {
+            this.cost = cost;
+            this.depth = depth;
+        }
+
+        long getCost() {
+            return cost;
+        }
+
+        int getDepth() {
+            return depth;
+        }
+
+        boolean isAllowed() {
+            return cost <= MAX_COST && depth <= MAX_DEPTH;
+        }
+
+        Map<String, Object> toSpecification() {
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("requested", cost);
+            map.put("maximum", MAX_COST);
+            map.put("depth", depth);
+            map.put("maxDepth", MAX_DEPTH);
+            return map;
+        }
+    }
+
+    /**
+     * Sent back instead of a result when a query costs too much.
+     */
+    public static class QueryTooExpensiveException extends AbortExecutionException {
+        private final transient QueryCost cost;
+        private final long left;
+
+        QueryTooExpensiveException(QueryCost cost) {
+            super(cost.getDepth() > MAX_DEPTH
+                ? "Query depth " + cost.getDepth() + " exceeds the maximum of " + MAX_DEPTH
+                : "Query cost " + cost.getCost() + " exceeds the maximum of " + MAX_COST);
+            this.cost = cost;
+            this.left = -1;
+        }
+
+        /**
+         * For an operation that would be allowed alone, but not after the rest of its batch.
+         */
+        QueryTooExpensiveException(QueryCost cost, long left) {
+            super("Query cost " + cost.getCost() + " exceeds the " + left + " left of the maximum of " + MAX_COST + " for this request");
+            this.cost = cost;
+            this.left = left;
+        }
+
+        @Override
+        public Map<String, Object> getExtensions() {
+            Map<String, Object> specification = cost.toSpecification();
+            if (left >= 0) {
+                specification.put("left", left);
+            }
+            Map<String, Object> extensions = new LinkedHashMap<>();
+            extensions.put("code", "QUERY_TOO_EXPENSIVE");
+            extensions.put(EXTENSION, specification);
+            return extensions;
+        }
+    }
+
+    @Override
+    public InstrumentationState createState() {
+        return new CostState();
+    }
+
+    @Override
+    public InstrumentationContext<ExecutionResult> beginExecuteOperation(InstrumentationExecuteOperationParameters parameters) {
+        // the document has been validated by now, so every field has a definition
+        ExecutionContext context = parameters.getExecutionContext();
+        QueryCost cost = estimate(QueryTraverser.newQueryTraverser()
+            .schema(context.getGraphQLSchema())
+            .document(context.getDocument())
+            .operationName(context.getOperationDefinition().getName())
+            .variables(context.getVariables())
+            .build());
+        if (!cost.isAllowed()) {
+            throw new QueryTooExpensiveException(cost);
+        }
+        Object requestContext = context.getContext();
+        if (requestContext instanceof RequestContext && !((RequestContext) requestContext).chargeCost(cost.getCost())) {
+            throw new QueryTooExpensiveException(cost, ((RequestContext) requestContext).getCostLeft());
+        }
+        CostState state = parameters.getInstrumentationState();
+        if (state != null) {
+            state.cost = cost;
+        }
+        return super.beginExecuteOperation(parameters);
+    }
+
+    @Override
+    public CompletableFuture<ExecutionResult> instrumentExecutionResult(ExecutionResult executionResult, InstrumentationExecutionParameters parameters) {
+        CostState state = parameters.getInstrumentationState();
+        QueryCost cost = state == null ? null : state.cost;
+        if (cost == null) {
+            return CompletableFuture.completedFuture(executionResult);
+        }
+        return CompletableFuture.completedFuture(
+            ExecutionResultImpl.newExecutionResult()
+                .from(executionResult)
+                .addExtension(EXTENSION, cost.toSpecification())
+                .build()
+        );
+    }
+
+    static QueryCost estimate(QueryTraverser traverser) {
+        Set<String> largeFields = new HashSet<>(Arrays.asList(LARGE_FIELDS.split("\\s*,\\s*")));
+        long[] cost = {0};
+        int[] depth = {0};
+        traverser.visitPreOrder(new QueryVisitorStub() {
+            @Override
+            public void visitField(QueryVisitorFieldEnvironment env) {
+                long multiplier = 1;
+                int fieldDepth = 1;
+                for (QueryVisitorFieldEnvironment parent = env.getParentEnvironment(); parent != null; parent = parent.getParentEnvironment()) {
+                    if (isIntrospection(parent)) {
+                        return;
+                    }
+                    multiplier = saturatedMultiply(multiplier, getListSize(parent, largeFields));
+                    fieldDepth++;
+                }
+                if (isIntrospection(env)) {
+                    return;
+                }
+                cost[0] = saturatedAdd(cost[0], multiplier);
+                depth[0] = Math.max(depth[0], fieldDepth);
+            }
+        });
+        return new QueryCost(cost[0], depth[0]);
+    }
+
+    private static boolean isIntrospection(QueryVisitorFieldEnvironment env) {
+        return env.isTypeNameIntrospectionField() || env.getFieldDefinition().getName().startsWith("__");
+    }
+
+    /**
+     * How many times the children of this field will be resolved, per time it is.
+     */
+    private static long getListSize(QueryVisitorFieldEnvironment env, Set<String> largeFields) {
+        Object limit = env.getArguments().get(Builders.ARG_LIMIT);
+        if (limit instanceof Number) {
+            return Math.max(0, ((Number) limit).longValue());
+        }
+        Object first = env.getArguments().get(Connections.ARG_FIRST);
+        if (first instanceof Number) {
+            return Math.max(0, Math.min(((Number) first).longValue(), Connections.MAX_PAGE_SIZE));
+        }
+        // a connection's edges are already counted by its first argument
+        if ("edges".equals(env.getFieldDefinition().getName())
+            || !GraphQLTypeUtil.isList(GraphQLTypeUtil.unwrapNonNull(env.getFieldDefinition().getType()))) {
+            return 1;
+        }
+        return largeFields.contains(env.getFieldDefinition().getName()) ? LARGE_LIST_SIZE : DEFAULT_LIST_SIZE;
+    }
+
+    private static long saturatedMultiply(long a, long b) {
+        try {
+            return Math.multiplyExact(a, b);
+        } catch (ArithmeticException e) {
+            return Long.MAX_VALUE;
+        }
+    }
+
+    private static long saturatedAdd(long a, long b) {
+        long sum = a + b;
+        return sum < 0 ? Long.MAX_VALUE : sum;
+    }
+}
@@ -0,0 +1,171 @@
+package io.jenkins.plugins.graphql;
+
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+import jenkins.model.Jenkins;
+import jenkins.model.JenkinsLocationConfiguration;
+import org.kohsuke.stapler.export.Exported;
+import org.kohsuke.stapler.export.ExportedBean;
+
+import javax.servlet.AsyncContext;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs queries on threads of our own, so a burst of expensive queries can't
+ * take every request thread the container has.
+ *
+ * At most {@link #MAX_CONCURRENCY} queries run at once and {@link #QUEUE_DEPTH}
+ * more wait their turn; anything past that is turned away. Both are read
+ * once, when the first query comes in. A request that isn't answered within
+ * {@link #TIMEOUT_MS} gets a 503, and its query is dropped if it hasn't
+ * started yet. Until a root URL is configured, queries run on the request
+ * thread as before, see {@link #isRequestThreadNeeded()}.
+ */
+@ExportedBean
+public class QueryExecutor {
+    private static final QueryExecutor INSTANCE = new QueryExecutor();
+
+    /**
+     * Run queries on the request thread, as before.
+     */
+    @SuppressWarnings("squid:S1444")
+    public static /* non-final for script console */ boolean DISABLED = Boolean.getBoolean(QueryExecutor.class.getName() + ".disabled");
+
+    @SuppressWarnings("squid:S1444")
+    public static /* non-final for script console */ int MAX_CONCURRENCY = Integer.getInteger(QueryExecutor.class.getName() + ".maxConcurrency", Math.max(2, Runtime.getRuntime().availableProcessors()));
+
+    @SuppressWarnings("squid:S1444")
+    public static /* non-final for script console */ int QUEUE_DEPTH = Integer.getInteger(QueryExecutor.class.getName() + ".queueDepth", 100);
+
+    /**
+     * How long a request may wait and run before the container gives up on it.
+     */
+    @SuppressWarnings("squid:S1444")
+    public static /* non-final for script console */ long TIMEOUT_MS = Long.getLong(QueryExecutor.class.getName() + ".timeoutMs", TimeUnit.MINUTES.toMillis(5));
+
+    /**
+     * What to tell clients that were turned away.
+     */
+    @SuppressWarnings("squid:S1444")
+    public static /* non-final for script console */ int RETRY_AFTER_SECONDS = Integer.getInteger(QueryExecutor.class.getName() + ".retryAfterSeconds", 5);
+
+    private volatile ThreadPoolExecutor executor;
+
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong timedOut = new AtomicLong();
+
+    QueryExecutor() {}
+
+    public static QueryExecutor get() {
+        return INSTANCE;
+    }
+
+    /**
+     * Whether queries have to stay on the request thread. Without a configured
+     * root URL Jenkins works it out from the current request, which only the
+     * request thread knows about, so the URL of every item and build would
+     * fail to resolve anywhere else.
+     */
+    public static boolean isRequestThreadNeeded() {
+        return Jenkins.getInstanceOrNull() != null && JenkinsLocationConfiguration.get().getUrl() == null;
+    }
+
+    /**
+     * Puts a request in async mode, to be answered with {@link #execute(AsyncQuery, AsyncQuery.Body)}.
+     */
+    public AsyncQuery start(AsyncContext context) {
+        return new AsyncQuery(context, TIMEOUT_MS, timedOut::incrementAndGet);
+    }
+
+    /**
+     * Answers an async request on one of our threads.
+     *
+     * @throws RejectedExecutionException when as many queries as allowed are already running and waiting
+     */
+    public void execute(AsyncQuery query, AsyncQuery.Body body) throws RejectedExecutionException {
+        query.setTask(execute(() -> query.run(body)));
+    }
+
+    /**
+     * @throws RejectedExecutionException when as many queries as allowed are already running and waiting
+     */
+    public Future<?> execute(Runnable query) throws RejectedExecutionException {
+        try {
+            return getExecutor().submit(() -> {
+                try {
+                    query.run();
+                } finally {
+                    completed.incrementAndGet();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            rejected.incrementAndGet();
+            throw e;
+        }
+    }
+
+    private ThreadPoolExecutor getExecutor() {
+        ThreadPoolExecutor current = executor;
+        if (current == null) {
+            synchronized (this) {
+                current = executor;
+                if (current == null) {
+                    int threads = Math.max(1, MAX_CONCURRENCY);
+                    BlockingQueue<Runnable> queue = QUEUE_DEPTH > 0 ? new ArrayBlockingQueue<>(QUEUE_DEPTH) : new SynchronousQueue<>();
+                    current = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, queue,
+                        new NamingThreadFactory(new DaemonThreadFactory(), "GraphQL query executor"));
+                    current.allowCoreThreadTimeOut(true);
+                    executor = current;
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Queries running right now.
+     */
+    @Exported
+    public int getActive() {
+        ThreadPoolExecutor current = executor;
+        return current == null ? 0 : current.getActiveCount();
+    }
+
+    /**
+     * Queries waiting for a thread.
+     */
+    @Exported
+    public int getQueueLength() {
+        ThreadPoolExecutor current = executor;
+        return current == null ? 0 : current.getQueue().size();
+    }
+
+    @Exported
+    public long getCompleted() {
+        return completed.get();
+    }
+
+    /**
+     * Requests that weren't answered in time.
+     */
+    @Exported
+    public long getTimedOut() {
+        return timedOut.get();
+    }
+
+    /**
+     * Queries turned away because too many were running and waiting.
+     */
+    @Exported
+    public long getRejected() {
+        return rejected.get();
+    }
+}
@@ -0,0 +1,75 @@
+package io.jenkins.plugins.graphql;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Passed as the GraphQL context of every query, holds state that lives as long as the request.
+ */
+public class RequestContext {
+    private final PermissionCache permissionCache;
+    private final Set<ResponseCache.Dependency> dependencies = EnumSet.noneOf(ResponseCache.Dependency.class);
+    private final AtomicLong costLeft;
+
+    public RequestContext() {
+        this.permissionCache = new PermissionCache();
+        this.costLeft = new AtomicLong(QueryCostInstrumentation.MAX_COST);
+    }
+
+    /**
+     * For one operation of a batch: shares the permission decisions and the
+     * cost allowance of {@code batch}, but tracks its own dependencies, so
+     * that each cached response is only invalidated by what it read.
+     */
+    RequestContext(@NonNull RequestContext batch) {
+        this.permissionCache = batch.permissionCache;
+        this.costLeft = batch.costLeft;
+    }
+
+    @NonNull
+    public PermissionCache getPermissionCache() {
+        return permissionCache;
+    }
+
+    /**
+     * Takes {@code cost} from what the request may still spend, so that the
+     * operations of a batch are limited together rather than one by one.
+     *
+     * @return false, leaving the budget as it was, if there isn't that much left
+     */
+    boolean chargeCost(long cost) {
+        long left;
+        do {
+            left = costLeft.get();
+            if (cost > left) {
+                return false;
+            }
+        } while (!costLeft.compareAndSet(left, left - cost));
+        return true;
+    }
+
+    long getCostLeft() {
+        return costLeft.get();
+    }
+
+    void addDependency(@CheckForNull ResponseCache.Dependency dependency) {
+        if (dependency != null) {
+            synchronized (dependencies) {
+                dependencies.add(dependency);
+            }
+        }
+    }
+
+    /**
+     * What kinds of objects the query read from so far.
+     */
+    @NonNull
+    Set<ResponseCache.Dependency> getDependencies() {
+        synchronized (dependencies) {
+            return EnumSet.copyOf(dependencies);
+        }
+    }
+}
@@ -0,0 +1,649 @@
+package io.jenkins.plugins.graphql;
+
+import graphql.execution.instrumentation.InstrumentationContext;
+import graphql.execution.instrumentation.SimpleInstrumentation;
+import graphql.execution.instrumentation.parameters.InstrumentationFieldFetchParameters;
+import graphql.schema.DataFetchingEnvironment;
+import hudson.Extension;
+import hudson.XmlFile;
+import hudson.model.Action;
+import hudson.model.Computer;
+import hudson.model.Item;
+import hudson.model.Queue;
+import hudson.model.Run;
+import hudson.model.Saveable;
+import hudson.model.TaskListener;
+import hudson.model.User;
+import hudson.model.listeners.ItemListener;
+import hudson.slaves.ComputerListener;
+import hudson.slaves.OfflineCause;
+import hudson.model.listeners.RunListener;
+import hudson.model.listeners.SaveableListener;
+import hudson.model.queue.QueueListener;
+import io.jenkins.plugins.graphql.json.JsonStreamWriter;
+import jenkins.model.Jenkins;
+import org.acegisecurity.Authentication;
+import org.acegisecurity.GrantedAuthority;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.kohsuke.stapler.export.Exported;
+import org.kohsuke.stapler.export.ExportedBean;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import java.io.FilterWriter;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Serialized responses to recent queries, shared between requests.
+ *
+ * Keyed by the query with insignificant whitespace and comments removed, the
+ * operation, the variables and the user, so two users never see each other's
+ * results. While a query runs we note which kinds of objects it read from
+ * (items, builds, users, the queue), and the response is dropped as soon as
+ * Jenkins reports a change to any of them. A response that read anything
+ * else, like agents or views, is dropped on every change. Changes that don't
+ * fire an event go unnoticed until the response is dropped after
+ * {@link #TTL_MS}; responses are also bounded in number and size.
+ */
+@ExportedBean
+public class ResponseCache {
+    private static final ResponseCache INSTANCE = new ResponseCache();
+
+    @SuppressWarnings("squid:S1444")
+    public static /* non-final for script console */ boolean DISABLED = Boolean.getBoolean(ResponseCache.class.getName() + ".disabled");
+
+    @SuppressWarnings("squid:S1444")
+    public static /* non-final for script console */ long TTL_MS = Long.getLong(ResponseCache.class.getName() + ".ttlMs", TimeUnit.SECONDS.toMillis(60));
+
+    @SuppressWarnings("squid:S1444")
+    public static /* non-final for script console */ int MAX_ENTRIES = Integer.getInteger(ResponseCache.class.getName() + ".maxEntries", 1000);
+
+    /**
+     * Upper bound on the total length of the cached responses.
+     */
+    @SuppressWarnings("squid:S1444")
+    public static /* non-final for script console */ long MAX_CHARS = Long.getLong(ResponseCache.class.getName() + ".maxChars", 16 * 1024 * 1024);
+
+    /**
+     * The kinds of objects a response can depend on.
+     */
+    public enum Dependency {
+        ITEMS, RUNS, USERS, QUEUE,
+        /** anything else, invalidated by every event */
+        OTHER
+    }
+
+    /**
+     * A cached response and its entity tag.
+     */
+    public static final class CachedResponse {
+        private final String response;
+        private volatile String etag;
+
+        CachedResponse(String response) {
+            this.response = response;
+        }
+
+        @NonNull
+        public String getResponse() {
+            return response;
+        }
+
+        /**
+         * Hashed the first time it is asked for, then reused for as long as the response stays cached.
+         */
+        @NonNull
+        public String getETag() {
+            String current = etag;
+            if (current == null) {
+                current = toETag(response);
+                etag = current;
+            }
+            return current;
+        }
+    }
+
+    private static final class Entry {
+        private final CachedResponse response;
+        private final Set<Dependency> dependencies;
+        private final long[] generations;
+        private final long created;
+
+        Entry(String response, Set<Dependency> dependencies, long[] generations, long created) {
+            this.response = new CachedResponse(response);
+            this.dependencies = dependencies;
+            this.generations = generations;
+            this.created = created;
+        }
+    }
+
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long weight;
+    /** bumped for a dependency whenever something of that kind changes, OTHER on every change */
+    private final AtomicLongArray generations = new AtomicLongArray(Dependency.values().length);
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    ResponseCache() {}
+
+    public static ResponseCache get() {
+        return INSTANCE;
+    }
+
+    /**
+     * @return null if the response to this request should not be cached
+     */
+    @CheckForNull
+    public String getKey(@NonNull GraphQLRequest request, @NonNull Authentication authentication) {
+        if (DISABLED || MAX_ENTRIES <= 0) {
+            return null;
+        }
+        StringWriter variables = new StringWriter();
+        try (JsonStreamWriter writer = new JsonStreamWriter(variables)) {
+            writer.write(sorted(request.getVariables()));
+        } catch (IOException e) {
+            // not going to happen writing to a string
+            return null;
+        }
+        return DigestUtils.sha256Hex(normalize(request.getQuery())
+            + '\n' + (request.getOperationName() == null ? "" : request.getOperationName())
+            + '\n' + variables
+            + '\n' + authentication.getName()
+            + '\n' + getAuthorities(authentication));
+    }
+
+    /**
+     * The groups a user is in decide what they may see as much as the name
+     * does, and can change without the user changing, e.g. in LDAP.
+     */
+    private static String getAuthorities(Authentication authentication) {
+        GrantedAuthority[] authorities = authentication.getAuthorities();
+        if (authorities == null) {
+            return "";
+        }
+        Set<String> names = new TreeSet<>();
+        for (GrantedAuthority authority : authorities) {
+            names.add(authority.getAuthority());
+        }
+        return String.join(",", names);
+    }
+
+    /**
+     * A snapshot to hand back to {@link #put}, taken before the query runs so
+     * that changes made while it runs aren't missed.
+     */
+    @NonNull
+    public long[] getGenerations() {
+        long[] snapshot = new long[generations.length()];
+        for (int i = 0; i < snapshot.length; i++) {
+            snapshot[i] = generations.get(i);
+        }
+        return snapshot;
+    }
+
+    @CheckForNull
+    public String get(@NonNull String key) {
+        CachedResponse response = getResponse(key);
+        return response == null ? null : response.getResponse();
+    }
+
+    @CheckForNull
+    public synchronized CachedResponse getResponse(@NonNull String key) {
+        Entry entry = entries.get(key);
+        if (entry != null && !isCurrent(entry, System.currentTimeMillis())) {
+            remove(key);
+            invalidations.incrementAndGet();
+            entry = null;
+        }
+        if (entry == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        return entry.response;
+    }
+
+    public synchronized void put(@NonNull String key, @NonNull String response, @NonNull Set<Dependency> dependencies, @NonNull long[] generations) {
+        if (response.length() > getMaxResponseChars()) {
+            return;
+        }
+        Set<Dependency> copy = EnumSet.noneOf(Dependency.class);
+        copy.addAll(dependencies);
+        Entry entry = new Entry(response, copy, generations, System.currentTimeMillis());
+        if (!isCurrent(entry, entry.created)) {
+            // something changed while the query ran
+            return;
+        }
+        remove(key);
+        entries.put(key, entry);
+        weight += response.length();
+        Iterator<Entry> iterator = entries.values().iterator();
+        while ((entries.size() > MAX_ENTRIES || weight > MAX_CHARS) && iterator.hasNext()) {
+            weight -= iterator.next().response.getResponse().length();
+            iterator.remove();
+            evictions.incrementAndGet();
+        }
+    }
+
+    /**
+     * Longest response worth keeping, anything longer is never cached.
+     */
+    public static long getMaxResponseChars() {
+        return MAX_CHARS / 10;
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        weight = 0;
+    }
+
+    /**
+     * Something of these kinds changed.
+     */
+    void invalidate(Dependency... changed) {
+        for (Dependency dependency : changed) {
+            generations.incrementAndGet(dependency.ordinal());
+        }
+        generations.incrementAndGet(Dependency.OTHER.ordinal());
+    }
+
+    private boolean isCurrent(Entry entry, long now) {
+        if (now - entry.created > TTL_MS) {
+            return false;
+        }
+        for (Dependency dependency : entry.dependencies) {
+            if (generations.get(dependency.ordinal()) != entry.generations[dependency.ordinal()]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void remove(String key) {
+        Entry removed = entries.remove(key);
+        if (removed != null) {
+            weight -= removed.response.getResponse().length();
+        }
+    }
+
+    /**
+     * A strong entity tag for a serialized response.
+     */
+    @NonNull
+    public static String toETag(@NonNull String response) {
+        return '"' + DigestUtils.sha256Hex(response) + '"';
+    }
+
+    /**
+     * The query without comments, commas, and whitespace between tokens that don't need it.
+     */
+    static String normalize(String query) {
+        StringBuilder sb = new StringBuilder(query.length());
+        boolean separated = false;
+        int i = 0;
+        while (i < query.length()) {
+            char c = query.charAt(i);
+            if (c == '"') {
+                int end = query.startsWith("\"\"\"", i) ? endOfBlockString(query, i + 3) : endOfString(query, i + 1);
+                sb.append(query, i, end);
+                i = end;
+                separated = false;
+                continue;
+            }
+            if (c == '#') {
+                while (i < query.length() && query.charAt(i) != '\n' && query.charAt(i) != '\r') {
+                    i++;
+                }
+                separated = true;
+                continue;
+            }
+            if (Character.isWhitespace(c) || c == ',' || c == '\uFEFF') {
+                separated = true;
+                i++;
+                continue;
+            }
+            if (separated && sb.length() > 0 && isNamePart(sb.charAt(sb.length() - 1)) && isNamePart(c)) {
+                sb.append(' ');
+            }
+            separated = false;
+            sb.append(c);
+            i++;
+        }
+        return sb.toString();
+    }
+
+    private static boolean isNamePart(char c) {
+        return Character.isLetterOrDigit(c) || c == '_' || c == '-' || c == '.' || c == '$';
+    }
+
+    private static int endOfString(String query, int i) {
+        while (i < query.length()) {
+            char c = query.charAt(i++);
+            if (c == '\\') {
+                i++;
+            } else if (c == '"' || c == '\n') {
+                break;
+            }
+        }
+        return Math.min(i, query.length());
+    }
+
+    private static int endOfBlockString(String query, int i) {
+        while (i < query.length()) {
+            if (query.startsWith("\\\"\"\"", i)) {
+                i += 4;
+            } else if (query.startsWith("\"\"\"", i)) {
+                return i + 3;
+            } else {
+                i++;
+            }
+        }
+        return query.length();
+    }
+
+    private static Object sorted(Object value) {
+        if (value instanceof Map) {
+            Map<String, Object> map = new TreeMap<>();
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                map.put(String.valueOf(entry.getKey()), sorted(entry.getValue()));
+            }
+            return map;
+        }
+        if (value instanceof Iterable) {
+            List<Object> list = new ArrayList<>();
+            for (Object element : (Iterable<?>) value) {
+                list.add(sorted(element));
+            }
+            return list;
+        }
+        return value;
+    }
+
+    @Exported
+    public synchronized int getSize() {
+        return entries.size();
+    }
+
+    /**
+     * Total length of the cached responses.
+     */
+    @Exported
+    public synchronized long getChars() {
+        return weight;
+    }
+
+    @Exported
+    public long getHits() {
+        return hits.get();
+    }
+
+    @Exported
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Responses dropped because something they depend on changed, or they expired.
+     */
+    @Exported
+    public long getInvalidations() {
+        return invalidations.get();
+    }
+
+    /**
+     * Responses dropped to make room.
+     */
+    @Exported
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    /**
+     * Passes a response through to the client, keeping a copy for the cache
+     * while it is short enough to be cached at all.
+     */
+    public static class CapturingWriter extends FilterWriter {
+        private StringBuilder copy = new StringBuilder();
+        private final long limit = getMaxResponseChars();
+
+        public CapturingWriter(@NonNull Writer out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int c) throws IOException {
+            out.write(c);
+            if (copy != null) {
+                copy.append((char) c);
+                checkLimit();
+            }
+        }
+
+        @Override
+        public void write(@NonNull char[] cbuf, int off, int len) throws IOException {
+            out.write(cbuf, off, len);
+            if (copy != null) {
+                copy.append(cbuf, off, len);
+                checkLimit();
+            }
+        }
+
+        @Override
+        public void write(@NonNull String str, int off, int len) throws IOException {
+            out.write(str, off, len);
+            if (copy != null) {
+                copy.append(str, off, off + len);
+                checkLimit();
+            }
+        }
+
+        private void checkLimit() {
+            if (copy.length() > limit) {
+                copy = null;
+            }
+        }
+
+        /**
+         * @return null if the response was too long to keep
+         */
+        @CheckForNull
+        public String getCaptured() {
+            return copy == null ? null : copy.toString();
+        }
+    }
+
+    /**
+     * Notes what kinds of objects each field of a query is read from.
+     */
+    public static class DependencyInstrumentation extends SimpleInstrumentation {
+        @Override
+        public InstrumentationContext<Object> beginFieldFetch(InstrumentationFieldFetchParameters parameters) {
+            DataFetchingEnvironment environment = parameters.getEnvironment();
+            Object context = environment.getContext();
+            if (!DISABLED && context instanceof RequestContext) {
+                ((RequestContext) context).addDependency(getDependency(environment));
+            }
+            return super.beginFieldFetch(parameters);
+        }
+
+        static Dependency getDependency(DataFetchingEnvironment environment) {
+            Object source = environment.getSource();
+            if (source instanceof Item) {
+                return Dependency.ITEMS;
+            }
+            if (source instanceof Run) {
+                return Dependency.RUNS;
+            }
+            if (source instanceof User) {
+                return Dependency.USERS;
+            }
+            if (source instanceof Queue || source instanceof Queue.Item) {
+                return Dependency.QUEUE;
+            }
+            if (environment.getExecutionStepInfo().getPath().getLevel() == 1) {
+                // which objects the top level lists are made of
+                String name = environment.getField().getName();
+                if (name.startsWith("allItems")) {
+                    return Dependency.ITEMS;
+                }
+                if (name.startsWith("allUsers")) {
+                    return Dependency.USERS;
+                }
+                return Dependency.OTHER;
+            }
+            if (source instanceof Action || source instanceof Map) {
+                // parts of the object (or top level list) they were read from, and covered by it
+                return null;
+            }
+            // computers, nodes, views and anything else we don't track on its own
+            return Dependency.OTHER;
+        }
+    }
+
+    @Extension
+    public static class ItemChanges extends ItemListener {
+        @Override
+        public void onCreated(Item item) {
+            get().invalidate(Dependency.ITEMS);
+        }
+
+        @Override
+        public void onCopied(Item src, Item item) {
+            get().invalidate(Dependency.ITEMS);
+        }
+
+        @Override
+        public void onDeleted(Item item) {
+            get().invalidate(Dependency.ITEMS, Dependency.RUNS);
+        }
+
+        @Override
+        public void onUpdated(Item item) {
+            get().invalidate(Dependency.ITEMS);
+        }
+
+        @Override
+        public void onLocationChanged(Item item, String oldFullName, String newFullName) {
+            get().invalidate(Dependency.ITEMS, Dependency.RUNS);
+        }
+    }
+
+    /**
+     * Builds change their job too (last build, health, and so on).
+     */
+    @Extension
+    public static class RunChanges extends RunListener<Run<?, ?>> {
+        @Override
+        public void onStarted(Run<?, ?> run, TaskListener listener) {
+            get().invalidate(Dependency.RUNS, Dependency.ITEMS);
+        }
+
+        @Override
+        public void onCompleted(Run<?, ?> run, @NonNull TaskListener listener) {
+            get().invalidate(Dependency.RUNS, Dependency.ITEMS);
+        }
+
+        @Override
+        public void onFinalized(Run<?, ?> run) {
+            get().invalidate(Dependency.RUNS, Dependency.ITEMS);
+        }
+
+        @Override
+        public void onDeleted(Run<?, ?> run) {
+            get().invalidate(Dependency.RUNS, Dependency.ITEMS);
+        }
+    }
+
+    @Extension
+    public static class SaveableChanges extends SaveableListener {
+        @Override
+        public void onChange(Saveable o, XmlFile file) {
+            if (o instanceof Jenkins) {
+                // may have changed who can see what
+                get().invalidate(Dependency.values());
+            } else if (o instanceof Item) {
+                get().invalidate(Dependency.ITEMS);
+            } else if (o instanceof Run) {
+                get().invalidate(Dependency.RUNS, Dependency.ITEMS);
+            } else if (o instanceof User) {
+                get().invalidate(Dependency.USERS);
+            } else {
+                get().invalidate();
+            }
+        }
+    }
+
+    /**
+     * Agents going on or offline, and node configuration, which are neither saved nor queued.
+     */
+    @Extension
+    public static class ComputerChanges extends ComputerListener {
+        @Override
+        public void onOnline(Computer c, TaskListener listener) {
+            get().invalidate();
+        }
+
+        @Override
+        public void onOffline(@NonNull Computer c, @CheckForNull OfflineCause cause) {
+            get().invalidate();
+        }
+
+        @Override
+        public void onTemporarilyOnline(Computer c) {
+            get().invalidate();
+        }
+
+        @Override
+        public void onTemporarilyOffline(Computer c, OfflineCause cause) {
+            get().invalidate();
+        }
+
+        @Override
+        public void onConfigurationChange() {
+            get().invalidate();
+        }
+    }
+
+    /**
+     * Jobs show whether they are queued, so the queue changes them too.
+     */
+    @Extension
+    public static class QueueChanges extends QueueListener {
+        @Override
+        public void onEnterWaiting(Queue.WaitingItem wi) {
+            get().invalidate(Dependency.QUEUE, Dependency.ITEMS);
+        }
+
+        @Override
+        public void onEnterBlocked(Queue.BlockedItem bi) {
+            get().invalidate(Dependency.QUEUE, Dependency.ITEMS);
+        }
+
+        @Override
+        public void onEnterBuildable(Queue.BuildableItem bi) {
+            get().invalidate(Dependency.QUEUE, Dependency.ITEMS);
+        }
+
+        @Override
+        public void onLeft(Queue.LeftItem li) {
+            get().invalidate(Dependency.QUEUE, Dependency.ITEMS);
+        }
+    }
+}
@@ -0,0 +1,290 @@
+package io.jenkins.plugins.graphql;
+
+import org.apache.commons.io.output.CountingOutputStream;
+import org.kohsuke.stapler.export.Exported;
+import org.kohsuke.stapler.export.ExportedBean;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Compresses responses with gzip or deflate, whichever the client prefers
+ * in {@code Accept-Encoding}.
+ *
+ * Responses smaller than {@link #MIN_BYTES} are sent as they are, they
+ * would barely shrink and compressing them costs more than it saves. When
+ * the size isn't known up front, the first {@link #MIN_BYTES} are held back
+ * until we know which side of the line the response falls on.
+ */
+@ExportedBean
+public class ResponseCompression {
+    private static final ResponseCompression INSTANCE = new ResponseCompression();
+
+    @SuppressWarnings("squid:S1444")
+    public static /* non-final for script console */ boolean DISABLED = Boolean.getBoolean(ResponseCompression.class.getName() + ".disabled");
+
+    @SuppressWarnings("squid:S1444")
+    public static /* non-final for script console */ int MIN_BYTES = Integer.getInteger(ResponseCompression.class.getName() + ".minBytes", 2048);
+
+    /**
+     * Deflater level, 1 for the least CPU to 9 for the smallest responses.
+     */
+    @SuppressWarnings("squid:S1444")
+    public static /* non-final for script console */ int LEVEL = Integer.getInteger(ResponseCompression.class.getName() + ".level", Deflater.DEFAULT_COMPRESSION);
+
+    private static final int BUFFER_SIZE = 8192;
+
+    public enum Encoding {
+        GZIP("gzip"),
+        DEFLATE("deflate");
+
+        private final String token;
+
+        Encoding(String token) {
+            this.token = token;
+        }
+
+        /**
+         * As it appears in {@code Accept-Encoding} and {@code Content-Encoding}.
+         */
+        @NonNull
+        public String getToken() {
+            return token;
+        }
+    }
+
+    private final AtomicLong compressed = new AtomicLong();
+    private final AtomicLong bytesIn = new AtomicLong();
+    private final AtomicLong bytesOut = new AtomicLong();
+
+    ResponseCompression() {}
+
+    public static ResponseCompression get() {
+        return INSTANCE;
+    }
+
+    /**
+     * The encoding to send a response of this size in.
+     *
+     * @param size in bytes, or -1 if not known yet
+     * @return null to send it as it is, or if that can't be decided until it is written
+     */
+    @CheckForNull
+    public static Encoding getEncoding(@NonNull HttpServletRequest req, long size) {
+        if (DISABLED || (size >= 0 && size < MIN_BYTES)) {
+            return null;
+        }
+        return negotiate(req.getHeader("Accept-Encoding"));
+    }
+
+    /**
+     * The encoding the client prefers, gzip when it likes both as much.
+     */
+    @CheckForNull
+    static Encoding negotiate(@CheckForNull String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return null;
+        }
+        float gzip = -1;
+        float deflate = -1;
+        float any = -1;
+        for (String coding : acceptEncoding.split(",")) {
+            String[] parts = coding.split(";");
+            String name = parts[0].trim().toLowerCase(Locale.ENGLISH);
+            float q = 1;
+            for (int i = 1; i < parts.length; i++) {
+                String parameter = parts[i].trim();
+                if (parameter.startsWith("q=")) {
+                    try {
+                        q = Float.parseFloat(parameter.substring(2));
+                    } catch (NumberFormatException e) {
+                        q = 0;
+                    }
+                }
+            }
+            if (name.equals("gzip") || name.equals("x-gzip")) {
+                gzip = q;
+            } else if (name.equals("deflate")) {
+                deflate = q;
+            } else if (name.equals("*")) {
+                any = q;
+            }
+        }
+        if (gzip < 0) {
+            gzip = any;
+        }
+        if (deflate < 0) {
+            deflate = any;
+        }
+        if (gzip > 0 && gzip >= deflate) {
+            return Encoding.GZIP;
+        }
+        return deflate > 0 ? Encoding.DEFLATE : null;
+    }
+
+    /**
+     * An entity tag for the response as sent in this encoding, so that a
+     * cache never mixes up the compressed and uncompressed bytes.
+     */
+    @NonNull
+    public static String toETag(@NonNull String etag, @CheckForNull Encoding encoding) {
+        if (encoding == null || !etag.endsWith("\"")) {
+            return etag;
+        }
+        return etag.substring(0, etag.length() - 1) + "-" + encoding.getToken() + '"';
+    }
+
+    /**
+     * Where to write the response body, compressed if the client and the size allow.
+     * Headers have to be in place before calling, the caller closes the stream.
+     *
+     * @param size in bytes, or -1 if not known yet
+     */
+    @NonNull
+    public OutputStream open(@NonNull HttpServletRequest req, @NonNull HttpServletResponse rsp, long size) throws IOException {
+        if (DISABLED) {
+            return rsp.getOutputStream();
+        }
+        if (!rsp.containsHeader("Vary")) {
+            rsp.setHeader("Vary", "Accept-Encoding");
+        }
+        Encoding encoding = getEncoding(req, size);
+        if (encoding == null) {
+            return rsp.getOutputStream();
+        }
+        if (size >= 0) {
+            return compress(rsp, encoding);
+        }
+        return new DeferredOutputStream(rsp, encoding);
+    }
+
+    private OutputStream compress(HttpServletResponse rsp, Encoding encoding) throws IOException {
+        rsp.setHeader("Content-Encoding", encoding.getToken());
+        compressed.incrementAndGet();
+        CountingOutputStream sent = new CountingOutputStream(rsp.getOutputStream());
+        return new CountingOutputStream(compress(sent, encoding, LEVEL)) {
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    bytesIn.addAndGet(getByteCount());
+                    bytesOut.addAndGet(sent.getByteCount());
+                }
+            }
+        };
+    }
+
+    /**
+     * Wraps {@code out} in a compressor for {@code encoding}, closing it finishes the stream.
+     */
+    @NonNull
+    static OutputStream compress(@NonNull OutputStream out, @NonNull Encoding encoding, int level) throws IOException {
+        if (encoding == Encoding.GZIP) {
+            return new GZIPOutputStream(out, BUFFER_SIZE) {
+                {
+                    def.setLevel(level);
+                }
+            };
+        }
+        Deflater deflater = new Deflater(level);
+        return new DeflaterOutputStream(out, deflater, BUFFER_SIZE) {
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    // we brought our own, so DeflaterOutputStream won't release it
+                    deflater.end();
+                }
+            }
+        };
+    }
+
+    /**
+     * Holds back the first {@link #MIN_BYTES}, then either compresses everything
+     * or, if the response ended before that, sends it as it is.
+     */
+    private class DeferredOutputStream extends OutputStream {
+        private final HttpServletResponse rsp;
+        private final Encoding encoding;
+        private ByteArrayOutputStream buffer = new ByteArrayOutputStream(Math.min(MIN_BYTES, BUFFER_SIZE));
+        private OutputStream out;
+
+        DeferredOutputStream(HttpServletResponse rsp, Encoding encoding) {
+            this.rsp = rsp;
+            this.encoding = encoding;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(@NonNull byte[] b, int off, int len) throws IOException {
+            if (out == null) {
+                if (buffer.size() + len < MIN_BYTES) {
+                    buffer.write(b, off, len);
+                    return;
+                }
+                out = compress(rsp, encoding);
+                buffer.writeTo(out);
+                buffer = null;
+            }
+            out.write(b, off, len);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            // nothing goes out before we know whether to compress
+            if (out != null) {
+                out.flush();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (out == null) {
+                out = rsp.getOutputStream();
+                buffer.writeTo(out);
+                buffer = null;
+            }
+            out.close();
+        }
+    }
+
+    /**
+     * Responses sent compressed.
+     */
+    @Exported
+    public long getCompressed() {
+        return compressed.get();
+    }
+
+    /**
+     * Size of the compressed responses before compression.
+     */
+    @Exported
+    public long getBytesIn() {
+        return bytesIn.get();
+    }
+
+    /**
+     * Size of the compressed responses as sent.
+     */
+    @Exported
+    public long getBytesOut() {
+        return bytesOut.get();
+    }
+}
@@ -0,0 +1,272 @@
+package io.jenkins.plugins.graphql;
+
+import graphql.GraphQL;
+import graphql.execution.instrumentation.ChainedInstrumentation;
+import graphql.schema.GraphQLSchema;
+import hudson.DescriptorExtensionList;
+import hudson.ExtensionList;
+import hudson.ExtensionListListener;
+import hudson.init.InitMilestone;
+import hudson.init.Initializer;
+import hudson.model.Descriptor;
+import hudson.model.RootAction;
+import hudson.model.TopLevelItemDescriptor;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+import jenkins.model.Jenkins;
+import org.kohsuke.stapler.export.Exported;
+import org.kohsuke.stapler.export.ExportedBean;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+
+/**
+ * Owns the schema queries are executed against.
+ *
+ * A new {@link GraphQL} is published with a single volatile write, so a query
+ * keeps the instance it started with while later ones pick up the new one.
+ * Builds happen on a dedicated thread, one at a time.
+ */
+@ExportedBean
+public class SchemaManager {
+    private static final Logger LOGGER = Logger.getLogger(SchemaManager.class.getName());
+    private static volatile SchemaManager instance = new SchemaManager();
+
+    /**
+     * How long to wait for plugin loading to settle before rebuilding.
+     */
+    @SuppressWarnings("squid:S1444")
+    public static /* non-final for script console */ long REBUILD_DELAY_MS = Long.getLong(SchemaManager.class.getName() + ".rebuildDelayMs", 5000);
+
+    /**
+     * Build the schema in the background instead of holding up startup.
+     */
+    @SuppressWarnings("squid:S1444")
+    public static /* non-final for script console */ boolean BACKGROUND_BUILD = Boolean.getBoolean(SchemaManager.class.getName() + ".backgroundBuild");
+
+    public enum State {
+        NOT_STARTED,
+        BUILDING,
+        READY,
+        FAILED
+    }
+
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(
+        new NamingThreadFactory(new DaemonThreadFactory(), "GraphQL schema builder")
+    );
+    private final AtomicBoolean rebuildScheduled = new AtomicBoolean();
+
+    private final CountDownLatch published = new CountDownLatch(1);
+
+    private volatile GraphQL graphQL;
+    private volatile DocumentCache documentCache = new DocumentCache();
+    /** Kept between builds so a rebuild only has to look at new classes */
+    private volatile Builders builders;
+    private volatile State state = State.NOT_STARTED;
+    private volatile long buildStarted;
+    private volatile long buildDuration;
+
+    SchemaManager() {}
+
+    public static SchemaManager get() {
+        return instance;
+    }
+
+    /**
+     * Swaps the manager queries go through, so that a test can watch a build from the start.
+     */
+    static void set(SchemaManager manager) {
+        instance = manager;
+    }
+
+    @CheckForNull
+    public GraphQL getGraphQL() {
+        return graphQL;
+    }
+
+    /**
+     * Waits for the first schema to be published.
+     *
+     * @return null if there is still no schema after the timeout
+     */
+    @CheckForNull
+    public GraphQL awaitGraphQL(long timeout, TimeUnit unit) throws InterruptedException {
+        GraphQL current = graphQL;
+        if (current != null || state == State.FAILED) {
+            return current;
+        }
+        published.await(timeout, unit);
+        return graphQL;
+    }
+
+    public void setSchema(GraphQLSchema schema) {
+        // parsed documents were validated against the old schema
+        DocumentCache cache = new DocumentCache();
+        graphQL = GraphQL.newGraphQL(schema)
+            .preparsedDocumentProvider(cache)
+            .instrumentation(new ChainedInstrumentation(Arrays.asList(
+                new QueryCostInstrumentation(),
+                new ResponseCache.DependencyInstrumentation()
+            )))
+            .build();
+        documentCache = cache;
+        ResponseCache.get().clear();
+        state = State.READY;
+        published.countDown();
+    }
+
+    /**
+     * Parsed query statistics, since the schema was last replaced.
+     */
+    @Exported(inline = true)
+    public DocumentCache getDocumentCache() {
+        return documentCache;
+    }
+
+    @Exported
+    public State getState() {
+        return state;
+    }
+
+    /**
+     * When the current (or last) build started.
+     */
+    @Exported
+    public long getBuildStarted() {
+        return buildStarted;
+    }
+
+    /**
+     * How long the last build took, or how long the current one has been going.
+     */
+    @Exported
+    public long getBuildDurationMillis() {
+        if (state == State.BUILDING) {
+            return System.currentTimeMillis() - buildStarted;
+        }
+        return buildDuration;
+    }
+
+    /**
+     * How many types have been generated so far.
+     */
+    @Exported
+    public int getBuiltTypes() {
+        Builders current = builders;
+        return current == null ? 0 : current.getBuiltTypeCount();
+    }
+
+    @CheckForNull
+    Builders getBuilders() {
+        return builders;
+    }
+
+    @Initializer(after = InitMilestone.JOB_LOADED)
+    public static void init() {
+        if (!hudson.Main.isUnitTest) {
+            get().start();
+            ExtensionListListener listener = new ExtensionListListener() {
+                @Override
+                public void onChange() {
+                    get().scheduleRebuild();
+                }
+            };
+            ExtensionList.lookup(Descriptor.class).addListener(listener);
+            ExtensionList.lookup(RootAction.class).addListener(listener);
+        }
+    }
+
+    /**
+     * Builds the first schema, on the builder thread if {@link #BACKGROUND_BUILD}
+     * is set, in which case queries are answered with 503 until it is published.
+     */
+    void start() {
+        if (BACKGROUND_BUILD) {
+            // reported as building from now on, not once the builder thread gets to it
+            buildStarted = System.currentTimeMillis();
+            state = State.BUILDING;
+            executor.execute(this::buildQuietly);
+        } else {
+            build();
+        }
+    }
+
+    /**
+     * Rebuilds the schema in the background, coalescing the burst of
+     * extension list changes a dynamic plugin load causes.
+     */
+    public void scheduleRebuild() {
+        if (rebuildScheduled.compareAndSet(false, true)) {
+            executor.schedule(() -> {
+                rebuildScheduled.set(false);
+                buildQuietly();
+            }, REBUILD_DELAY_MS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void buildQuietly() {
+        try {
+            build();
+        } catch (RuntimeException e) {
+            LOGGER.log(Level.WARNING, "Unable to build GraphQL schema", e);
+        }
+    }
+
+    private synchronized void build() {
+        buildStarted = System.currentTimeMillis();
+        state = State.BUILDING;
+        try {
+            doBuild();
+            buildDuration = System.currentTimeMillis() - buildStarted;
+            LOGGER.info("Built GraphQL schema in " + buildDuration + "ms");
+        } catch (RuntimeException | Error e) {
+            buildDuration = System.currentTimeMillis() - buildStarted;
+            // an earlier schema is still usable
+            state = graphQL == null ? State.FAILED : State.READY;
+            throw e;
+        }
+    }
+
+    private void doBuild() {
+        Jenkins instance = Jenkins.get();
+        String fingerprint = SchemaSnapshot.computeFingerprint(instance);
+
+        if (builders == null) {
+            SchemaSnapshot snapshot = SchemaSnapshot.load(instance, fingerprint);
+            if (snapshot != null) {
+                Builders restored = new Builders();
+                GraphQLSchema schema = restored.buildSchema(snapshot);
+                if (schema != null) {
+                    LOGGER.info("Loaded GraphQL schema from snapshot");
+                    // a rebuild after a dynamic plugin load picks up from the snapshot's types
+                    builders = restored;
+                    setSchema(schema);
+                    return;
+                }
+            }
+        }
+
+        if (ClassIndex.get().update()) {
+            ClassUtils.setAllClassesCache(null);
+        }
+        if (builders == null) {
+            builders = new Builders();
+        }
+        builders.addExtraTopLevelClasses(
+            DescriptorExtensionList.lookup(TopLevelItemDescriptor.class).stream()
+                .map(d -> d.clazz)
+                .collect(Collectors.toList())
+        );
+        GraphQLSchema schema = builders.buildSchema();
+        new SchemaSnapshot(fingerprint, builders).save(instance);
+        setSchema(schema);
+    }
+}
@@ -0,0 +1,232 @@
+package io.jenkins.plugins.graphql;
+
+import hudson.PluginWrapper;
+import hudson.XmlFile;
+import jenkins.model.Jenkins;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.kohsuke.stapler.export.Model;
+import org.kohsuke.stapler.export.ModelBuilder;
+import org.kohsuke.stapler.export.NotExportableException;
+import org.kohsuke.stapler.export.Property;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import java.io.File;
+import java.io.IOException;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Generated schema persisted to JENKINS_HOME, so a restart with the same core
+ * and plugins can skip walking every exported class again.
+ *
+ * Stapler {@link Property} objects can't be serialized, so they are stored as
+ * the owning class name and the property name and looked up again on load.
+ * The per-class type definitions are kept too, so that the {@link Builders}
+ * restored from a snapshot only has to walk classes loaded afterwards.
+ */
+public class SchemaSnapshot {
+    private static final Logger LOGGER = Logger.getLogger(SchemaSnapshot.class.getName());
+
+    /**
+     * Set to true to always do a full schema build.
+     */
+    @SuppressWarnings("squid:S1444")
+    public static /* non-final for script console */ boolean DISABLED = Boolean.getBoolean(SchemaSnapshot.class.getName() + ".disabled");
+
+    private final String fingerprint;
+    private final String schemaDefinition;
+    /**
+     * {@code Type#field} to {@code owner.class.Name#propertyName}.
+     */
+    private final TreeMap<String, String> properties = new TreeMap<>();
+    /**
+     * Class name to the type definition generated for it, null in snapshots
+     * written before these were kept.
+     */
+    private final TreeMap<String, String> types = new TreeMap<>();
+    /**
+     * Interfaces and abstract classes whose subclasses were added as types.
+     */
+    private final TreeSet<String> expandedInterfaces = new TreeSet<>();
+
+    public SchemaSnapshot(String fingerprint, Builders builders) {
+        this.fingerprint = fingerprint;
+        this.schemaDefinition = builders.getSchemaDefinition();
+        for (Map.Entry<String, Property> entry : builders.getPropertyMap().entrySet()) {
+            Property property = entry.getValue();
+            properties.put(entry.getKey(), property.parent.type.getName() + "#" + property.name);
+        }
+        for (Map.Entry<Class<?>, String> entry : builders.getTypeDefinitions().entrySet()) {
+            types.put(entry.getKey().getName(), entry.getValue());
+        }
+        for (Class<?> clazz : builders.getExpandedInterfaces()) {
+            expandedInterfaces.add(clazz.getName());
+        }
+    }
+
+    public String getFingerprint() {
+        return fingerprint;
+    }
+
+    public String getSchemaDefinition() {
+        return schemaDefinition;
+    }
+
+    /**
+     * Looks up the stapler properties recorded in this snapshot again.
+     *
+     * @return null if any of the properties can no longer be found
+     */
+    @CheckForNull
+    public Map<String, Property> resolveProperties(ModelBuilder modelBuilder) {
+        ClassLoader classLoader = getClassLoader();
+        Map<String, Property> resolved = new HashMap<>();
+        for (Map.Entry<String, String> entry : properties.entrySet()) {
+            String[] owner = entry.getValue().split("#", 2);
+            Property property = null;
+            try {
+                Model<?> model = modelBuilder.get(Class.forName(owner[0], false, classLoader));
+                for (Property p : model.getProperties()) {
+                    if (p.name.equals(owner[1])) {
+                        property = p;
+                        break;
+                    }
+                }
+            } catch (ClassNotFoundException | LinkageError | NotExportableException e) {
+                LOGGER.log(Level.FINE, "Unable to resolve " + entry.getValue(), e);
+            }
+            if (property == null) {
+                LOGGER.info("Schema snapshot is stale, " + entry.getValue() + " no longer exists");
+                return null;
+            }
+            resolved.put(entry.getKey(), property);
+        }
+        return resolved;
+    }
+
+    /**
+     * Loads the classes the type definitions in this snapshot were generated from again.
+     *
+     * @return null if any of the classes can no longer be found
+     */
+    @CheckForNull
+    public Map<Class<?>, String> resolveTypes() {
+        if (types == null) {
+            LOGGER.info("Schema snapshot has no type definitions, it was written by an older version");
+            return null;
+        }
+        Map<Class<?>, String> resolved = new HashMap<>();
+        for (Map.Entry<String, String> entry : types.entrySet()) {
+            Class<?> clazz = loadClass(entry.getKey());
+            if (clazz == null) {
+                return null;
+            }
+            resolved.put(clazz, entry.getValue());
+        }
+        return resolved;
+    }
+
+    /**
+     * @return null if any of the classes can no longer be found
+     */
+    @CheckForNull
+    public Set<Class<?>> resolveExpandedInterfaces() {
+        Set<Class<?>> resolved = new HashSet<>();
+        if (expandedInterfaces == null) {
+            return resolved;
+        }
+        for (String name : expandedInterfaces) {
+            Class<?> clazz = loadClass(name);
+            if (clazz == null) {
+                return null;
+            }
+            resolved.add(clazz);
+        }
+        return resolved;
+    }
+
+    @CheckForNull
+    private static Class<?> loadClass(String name) {
+        try {
+            return Class.forName(name, false, getClassLoader());
+        } catch (ClassNotFoundException | LinkageError e) {
+            LOGGER.log(Level.FINE, "Unable to load " + name, e);
+            LOGGER.info("Schema snapshot is stale, " + name + " no longer exists");
+            return null;
+        }
+    }
+
+    private static ClassLoader getClassLoader() {
+        Jenkins instance = Jenkins.getInstanceOrNull();
+        return instance != null
+            ? instance.getPluginManager().uberClassLoader
+            : SchemaSnapshot.class.getClassLoader();
+    }
+
+    /**
+     * Identifies the set of classes a schema would be generated from, which is
+     * fully determined by the core version and the installed plugins.
+     */
+    public static String computeFingerprint(Jenkins instance) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("core:").append(Jenkins.VERSION).append('\n');
+        instance.getPluginManager().getPlugins()
+            .stream()
+            .sorted(Comparator.comparing(PluginWrapper::getShortName))
+            .forEach(plugin -> sb.append(plugin.getShortName())
+                .append(':')
+                .append(plugin.getVersion())
+                .append(plugin.isActive() ? "" : ":inactive")
+                .append('\n')
+            );
+        return DigestUtils.sha256Hex(sb.toString());
+    }
+
+    private static XmlFile getConfigFile(Jenkins instance) {
+        return new XmlFile(Jenkins.XSTREAM2, new File(instance.getRootDir(), SchemaSnapshot.class.getName() + ".xml"));
+    }
+
+    /**
+     * @return the stored snapshot if it was generated from the same fingerprint
+     */
+    @CheckForNull
+    public static SchemaSnapshot load(Jenkins instance, String fingerprint) {
+        if (DISABLED) {
+            return null;
+        }
+        XmlFile file = getConfigFile(instance);
+        if (!file.exists()) {
+            return null;
+        }
+        try {
+            SchemaSnapshot snapshot = (SchemaSnapshot) file.read();
+            if (!fingerprint.equals(snapshot.fingerprint)) {
+                LOGGER.info("Installed plugins changed since the schema snapshot was saved");
+                return null;
+            }
+            return snapshot;
+        } catch (IOException | ClassCastException e) {
+            LOGGER.log(Level.WARNING, "Unable to read schema snapshot " + file, e);
+            return null;
+        }
+    }
+
+    public void save(Jenkins instance) {
+        if (DISABLED) {
+            return;
+        }
+        XmlFile file = getConfigFile(instance);
+        try {
+            file.write(this);
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Unable to write schema snapshot " + file, e);
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package io.jenkins.plugins.graphql;
+
+import com.google.common.collect.Iterables;
+import graphql.schema.GraphQLInterfaceType;
+import graphql.schema.GraphQLObjectType;
+import graphql.schema.GraphQLSchema;
+import graphql.schema.GraphQLType;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * What a Java class maps to in one particular schema.
+ *
+ * Backed by {@link ClassValue}s so the entries go away with the plugin
+ * classloader, and the whole cache goes away with the schema.
+ */
+final class SchemaTypeCache {
+    private final GraphQLSchema schema;
+
+    private final ClassValue<Optional<GraphQLObjectType>> objectTypes = new ClassValue<Optional<GraphQLObjectType>>() {
+        @Override
+        protected Optional<GraphQLObjectType> computeValue(Class<?> clazz) {
+            return Optional.ofNullable(resolveObjectType(clazz));
+        }
+    };
+
+    private final ClassValue<Boolean> representable = new ClassValue<Boolean>() {
+        @Override
+        protected Boolean computeValue(Class<?> clazz) {
+            return schema.getType(ClassUtils.getGraphQLClassName(clazz)) != null;
+        }
+    };
+
+    SchemaTypeCache(GraphQLSchema schema) {
+        this.schema = schema;
+    }
+
+    GraphQLSchema getSchema() {
+        return schema;
+    }
+
+    /**
+     * The object type an instance of {@code clazz} is returned as, for resolving interfaces.
+     */
+    @CheckForNull
+    GraphQLObjectType getObjectType(Class<?> clazz) {
+        return objectTypes.get(clazz).orElse(null);
+    }
+
+    /**
+     * Whether the schema has a type for {@code clazz} at all.
+     */
+    boolean isRepresentable(Class<?> clazz) {
+        return representable.get(clazz);
+    }
+
+    /**
+     * Drops the elements the schema has no type for, while they are iterated,
+     * so that lazy collections like a job's builds are only walked once.
+     */
+    @SuppressWarnings("unchecked")
+    Iterable<?> filterRepresentable(Iterable<?> collection) {
+        return Iterables.filter((Iterable<Object>) collection, element -> element == null || isRepresentable(element.getClass()));
+    }
+
+    @CheckForNull
+    private GraphQLObjectType resolveObjectType(Class<?> clazz) {
+        GraphQLType type = schema.getType(ClassUtils.getGraphQLClassName(clazz));
+        if (type instanceof GraphQLObjectType) {
+            return (GraphQLObjectType) type;
+        }
+        if (type instanceof GraphQLInterfaceType) {
+            List<GraphQLObjectType> implementations = schema.getImplementations((GraphQLInterfaceType) type);
+            if (!implementations.isEmpty()) {
+                return implementations.get(0);
+            }
+        }
+        return null;
+    }
+}
@@ -6,21 +6,34 @@ import hudson.security.AccessControlled;
 import hudson.security.Permission;
 import jenkins.model.Jenkins;
 
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+
 public class StreamUtils {
     private StreamUtils() {}
 
     public static boolean isAllowed(Object item) {
+        return isAllowed(item, null);
+    }
+
+    /**
+     * @param cache decisions already made for this request, if any
+     */
+    public static boolean isAllowed(Object item, @CheckForNull PermissionCache cache) {
         if (item instanceof Item) {
-            return ((Item) item).hasPermission(Item.READ);
+            return hasPermission((Item) item, Item.READ, cache);
         }
         if (item instanceof View) {
-            return ((View) item).hasPermission(View.READ);
+            return hasPermission((View) item, View.READ, cache);
         }
         if (item instanceof AccessControlled) {
-            return ((AccessControlled) item).hasPermission(Permission.READ) || ((AccessControlled) item).hasPermission(Jenkins.READ);
+            return hasPermission((AccessControlled) item, Permission.READ, cache) || hasPermission((AccessControlled) item, Jenkins.READ, cache);
         }
         // not something that has access control rules, so by default just allow it
         // Most notiable, Project and Run Actions
         return true;
     }
+
+    private static boolean hasPermission(AccessControlled item, Permission permission, @CheckForNull PermissionCache cache) {
+        return cache == null ? item.hasPermission(permission) : cache.hasPermission(item, permission);
+    }
 }
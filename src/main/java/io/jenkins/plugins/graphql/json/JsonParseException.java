@@ -0,0 +1,12 @@
+package io.jenkins.plugins.graphql.json;
+
+import java.io.IOException;
+
+/**
+ * The input is not valid JSON.
+ */
+public class JsonParseException extends IOException {
+    public JsonParseException(String message) {
+        super(message);
+    }
+}
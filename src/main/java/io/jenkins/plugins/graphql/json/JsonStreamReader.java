@@ -0,0 +1,286 @@
+package io.jenkins.plugins.graphql.json;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads a JSON value off a stream into maps, lists, strings, numbers,
+ * booleans and nulls, without buffering the whole document first.
+ *
+ * Numbers come back as the smallest of {@link Integer}, {@link Long} or
+ * {@link BigInteger} that holds them, or {@link Double} if they have a
+ * fraction or exponent.
+ */
+public class JsonStreamReader {
+    /**
+     * Deeper documents are rejected rather than risking the stack.
+     */
+    static final int MAX_DEPTH = 256;
+
+    private final Reader reader;
+    private final char[] buffer = new char[4096];
+    private int position;
+    private int limit;
+    private long offset;
+    private int depth;
+
+    public JsonStreamReader(Reader reader) {
+        this.reader = reader;
+    }
+
+    /**
+     * Reads one value and checks nothing but whitespace follows it.
+     */
+    public Object readDocument() throws IOException {
+        Object value = readValue();
+        if (skipWhitespace() != -1) {
+            throw error("Unexpected content after the end of the document");
+        }
+        return value;
+    }
+
+    /**
+     * @return true if there is nothing but whitespace left
+     */
+    public boolean isAtEnd() throws IOException {
+        return skipWhitespace() == -1;
+    }
+
+    public Object readValue() throws IOException {
+        int c = skipWhitespace();
+        switch (c) {
+            case '{':
+                position++;
+                return readObject();
+            case '[':
+                position++;
+                return readArray();
+            case '"':
+                position++;
+                return readString();
+            case 't':
+                expect("true");
+                return Boolean.TRUE;
+            case 'f':
+                expect("false");
+                return Boolean.FALSE;
+            case 'n':
+                expect("null");
+                return null;
+            case -1:
+                throw error("Unexpected end of document");
+            default:
+                if (c == '-' || (c >= '0' && c <= '9')) {
+                    return readNumber();
+                }
+                throw error("Unexpected character '" + (char) c + "'");
+        }
+    }
+
+    private Map<String, Object> readObject() throws IOException {
+        enter();
+        Map<String, Object> map = new LinkedHashMap<>();
+        if (skipWhitespace() == '}') {
+            position++;
+            depth--;
+            return map;
+        }
+        while (true) {
+            if (skipWhitespace() != '"') {
+                throw error("Expected a property name");
+            }
+            position++;
+            String key = readString();
+            if (skipWhitespace() != ':') {
+                throw error("Expected ':'");
+            }
+            position++;
+            map.put(key, readValue());
+
+            int c = skipWhitespace();
+            position++;
+            if (c == '}') {
+                depth--;
+                return map;
+            }
+            if (c != ',') {
+                throw error("Expected ',' or '}'");
+            }
+        }
+    }
+
+    private List<Object> readArray() throws IOException {
+        enter();
+        List<Object> list = new ArrayList<>();
+        if (skipWhitespace() == ']') {
+            position++;
+            depth--;
+            return list;
+        }
+        while (true) {
+            list.add(readValue());
+
+            int c = skipWhitespace();
+            position++;
+            if (c == ']') {
+                depth--;
+                return list;
+            }
+            if (c != ',') {
+                throw error("Expected ',' or ']'");
+            }
+        }
+    }
+
+    private String readString() throws IOException {
+        StringBuilder sb = new StringBuilder();
+        while (true) {
+            if (position == limit && !fill()) {
+                throw error("Unterminated string");
+            }
+            // copy runs of plain characters in one go
+            int start = position;
+            while (position < limit) {
+                char c = buffer[position];
+                if (c == '"' || c == '\\' || c < 0x20) {
+                    break;
+                }
+                position++;
+            }
+            sb.append(buffer, start, position - start);
+            if (position == limit) {
+                continue;
+            }
+
+            char c = buffer[position++];
+            if (c == '"') {
+                return sb.toString();
+            }
+            if (c < 0x20) {
+                throw error("Unescaped control character in string");
+            }
+            sb.append(readEscape());
+        }
+    }
+
+    private char readEscape() throws IOException {
+        int c = read();
+        switch (c) {
+            case '"': return '"';
+            case '\\': return '\\';
+            case '/': return '/';
+            case 'b': return '\b';
+            case 'f': return '\f';
+            case 'n': return '\n';
+            case 'r': return '\r';
+            case 't': return '\t';
+            case 'u':
+                int value = 0;
+                for (int i = 0; i < 4; i++) {
+                    int digit = Character.digit(read(), 16);
+                    if (digit < 0) {
+                        throw error("Invalid unicode escape");
+                    }
+                    value = value << 4 | digit;
+                }
+                return (char) value;
+            default:
+                throw error("Invalid escape");
+        }
+    }
+
+    private Number readNumber() throws IOException {
+        StringBuilder sb = new StringBuilder();
+        boolean decimal = false;
+        while (true) {
+            int c = peek();
+            if ((c >= '0' && c <= '9') || c == '-' || c == '+') {
+                sb.append((char) c);
+            } else if (c == '.' || c == 'e' || c == 'E') {
+                sb.append((char) c);
+                decimal = true;
+            } else {
+                break;
+            }
+            position++;
+        }
+
+        String number = sb.toString();
+        try {
+            if (decimal) {
+                return new BigDecimal(number).doubleValue();
+            }
+            BigInteger value = new BigInteger(number);
+            if (value.bitLength() < 32) {
+                return value.intValue();
+            }
+            if (value.bitLength() < 64) {
+                return value.longValue();
+            }
+            return value;
+        } catch (NumberFormatException e) {
+            throw error("Invalid number '" + number + "'");
+        }
+    }
+
+    private void expect(String literal) throws IOException {
+        for (int i = 0; i < literal.length(); i++) {
+            if (read() != literal.charAt(i)) {
+                throw error("Expected '" + literal + "'");
+            }
+        }
+    }
+
+    private void enter() throws JsonParseException {
+        if (++depth > MAX_DEPTH) {
+            throw error("Document is nested too deeply");
+        }
+    }
+
+    private int skipWhitespace() throws IOException {
+        while (true) {
+            int c = peek();
+            if (c != ' ' && c != '\t' && c != '\n' && c != '\r') {
+                return c;
+            }
+            position++;
+        }
+    }
+
+    private int peek() throws IOException {
+        if (position == limit && !fill()) {
+            return -1;
+        }
+        return buffer[position];
+    }
+
+    private int read() throws IOException {
+        int c = peek();
+        if (c != -1) {
+            position++;
+        }
+        return c;
+    }
+
+    private boolean fill() throws IOException {
+        offset += limit;
+        position = 0;
+        limit = 0;
+        int read = reader.read(buffer);
+        if (read <= 0) {
+            return false;
+        }
+        limit = read;
+        return true;
+    }
+
+    private JsonParseException error(String message) {
+        return new JsonParseException(message + " at offset " + (offset + position));
+    }
+}
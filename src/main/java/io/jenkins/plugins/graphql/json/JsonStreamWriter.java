@@ -0,0 +1,158 @@
+package io.jenkins.plugins.graphql.json;
+
+import io.jenkins.plugins.graphql.types.AdditionalScalarTypes;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.reflect.Array;
+import java.nio.charset.StandardCharsets;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.GregorianCalendar;
+import java.util.Map;
+
+/**
+ * Writes an execution result (maps, lists and scalars) as JSON, straight to a
+ * stream, without building a document or a string first.
+ *
+ * Only {@link #BUFFER_SIZE} characters are held at a time.
+ */
+public class JsonStreamWriter implements Flushable, Closeable {
+    @SuppressWarnings("squid:S1444")
+    public static /* non-final for script console */ int BUFFER_SIZE = Integer.getInteger(JsonStreamWriter.class.getName() + ".bufferSize", 8192);
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final Writer writer;
+
+    public JsonStreamWriter(OutputStream outputStream) {
+        this(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8));
+    }
+
+    public JsonStreamWriter(Writer writer) {
+        this.writer = new BufferedWriter(writer, BUFFER_SIZE);
+    }
+
+    public JsonStreamWriter write(Object value) throws IOException {
+        if (value == null) {
+            writer.write("null");
+        } else if (value instanceof CharSequence || value instanceof Character || value instanceof Enum) {
+            writeString(value.toString());
+        } else if (value instanceof Boolean) {
+            writer.write(value.toString());
+        } else if (value instanceof Number) {
+            writeNumber((Number) value);
+        } else if (value instanceof Map) {
+            writeObject((Map<?, ?>) value);
+        } else if (value instanceof Iterable) {
+            writeArray((Iterable<?>) value);
+        } else if (value.getClass().isArray()) {
+            writeArray(value);
+        } else if (value instanceof GregorianCalendar) {
+            writeString((String) AdditionalScalarTypes.GregrianCalendarScalar.getCoercing().serialize(value));
+        } else if (value instanceof Calendar) {
+            writeNumber(((Calendar) value).getTimeInMillis());
+        } else if (value instanceof Date) {
+            writeNumber(((Date) value).getTime());
+        } else if (value instanceof Class) {
+            writeString((String) AdditionalScalarTypes.ClassScalar.getCoercing().serialize(value));
+        } else {
+            writeString(value.toString());
+        }
+        return this;
+    }
+
+    private void writeNumber(Number number) throws IOException {
+        if ((number instanceof Double && !Double.isFinite(number.doubleValue()))
+            || (number instanceof Float && !Float.isFinite(number.floatValue()))) {
+            // not representable in JSON
+            writer.write("null");
+        } else {
+            writer.write(number.toString());
+        }
+    }
+
+    private void writeObject(Map<?, ?> map) throws IOException {
+        writer.write('{');
+        boolean first = true;
+        for (Map.Entry<?, ?> entry : map.entrySet()) {
+            if (!first) {
+                writer.write(',');
+            }
+            first = false;
+            writeString(String.valueOf(entry.getKey()));
+            writer.write(':');
+            write(entry.getValue());
+        }
+        writer.write('}');
+    }
+
+    private void writeArray(Iterable<?> iterable) throws IOException {
+        writer.write('[');
+        boolean first = true;
+        for (Object element : iterable) {
+            if (!first) {
+                writer.write(',');
+            }
+            first = false;
+            write(element);
+        }
+        writer.write(']');
+    }
+
+    private void writeArray(Object array) throws IOException {
+        writer.write('[');
+        for (int i = 0, length = Array.getLength(array); i < length; i++) {
+            if (i > 0) {
+                writer.write(',');
+            }
+            write(Array.get(array, i));
+        }
+        writer.write(']');
+    }
+
+    private void writeString(String value) throws IOException {
+        writer.write('"');
+        int start = 0;
+        for (int i = 0, length = value.length(); i < length; i++) {
+            char c = value.charAt(i);
+            String escaped;
+            switch (c) {
+                case '"': escaped = "\\\""; break;
+                case '\\': escaped = "\\\\"; break;
+                case '\n': escaped = "\\n"; break;
+                case '\r': escaped = "\\r"; break;
+                case '\t': escaped = "\\t"; break;
+                case '\b': escaped = "\\b"; break;
+                case '\f': escaped = "\\f"; break;
+                default:
+                    // control characters, plus the line separators javascript chokes on
+                    if (c < 0x20 || c == '\u2028' || c == '\u2029') {
+                        escaped = "\\u" + HEX[c >> 12 & 0xf] + HEX[c >> 8 & 0xf] + HEX[c >> 4 & 0xf] + HEX[c & 0xf];
+                    } else {
+                        continue;
+                    }
+            }
+            writer.write(value, start, i - start);
+            writer.write(escaped);
+            start = i + 1;
+        }
+        writer.write(value, start, value.length() - start);
+        writer.write('"');
+    }
+
+    @Override
+    public void flush() throws IOException {
+        writer.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        writer.close();
+    }
+}
@@ -0,0 +1,34 @@
+package io.jenkins.plugins.graphql;
+
+import org.junit.Test;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the JMH benchmarks in this package, not part of the normal test run.
+ *
+ * {@code mvn test -Dtest=BenchmarkRunner}, results end up in {@code jmh-report.json}
+ */
+public class BenchmarkRunner {
+    @Test
+    public void runJmhBenchmarks() throws Exception {
+        ChainedOptionsBuilder options = new OptionsBuilder()
+            .include(BenchmarkRunner.class.getPackage().getName() + "\\..*Benchmark")
+            .mode(Mode.AverageTime)
+            .timeUnit(TimeUnit.MICROSECONDS)
+            .warmupIterations(2)
+            .measurementIterations(3)
+            .forks(1)
+            .shouldFailOnError(true)
+            .shouldDoGC(true)
+            .resultFormat(ResultFormatType.JSON)
+            .result("jmh-report.json");
+
+        new Runner(options.build()).run();
+    }
+}
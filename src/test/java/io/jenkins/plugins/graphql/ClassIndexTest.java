@@ -0,0 +1,58 @@
+package io.jenkins.plugins.graphql;
+
+import hudson.model.AbstractBuild;
+import hudson.model.AbstractProject;
+import hudson.model.Build;
+import hudson.model.Cause;
+import hudson.model.FreeStyleBuild;
+import hudson.model.FreeStyleProject;
+import hudson.model.Job;
+import hudson.model.ParametersAction;
+import hudson.model.Project;
+import hudson.model.Run;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+
+import java.util.Arrays;
+import java.util.Set;
+
+import static org.junit.Assert.assertTrue;
+
+public class ClassIndexTest {
+    @Rule
+    public JenkinsRule j = new JenkinsRule();
+
+    @After
+    public void tearDown() {
+        ClassUtils.setAllClassesCache(null);
+    }
+
+    @Test
+    public void indexesWhatTheClasspathScanFound() {
+        Set<Class<?>> classes = ClassIndex.get().getClasses();
+        for (Class<?> clazz : Arrays.asList(
+            FreeStyleBuild.class,
+            Cause.UserIdCause.class,
+            ParametersAction.class,
+            Run.class,
+            AbstractBuild.class,
+            Build.class,
+            Job.class,
+            AbstractProject.class,
+            Project.class,
+            FreeStyleProject.class
+        )) {
+            assertTrue(clazz.getName(), classes.contains(clazz));
+        }
+    }
+
+    @Test
+    public void findsSubclassesFromTheIndex() {
+        ClassUtils.setAllClassesCache(null);
+        assertTrue(ClassUtils.findSubclasses(Run.class).containsAll(Arrays.asList(AbstractBuild.class, Build.class, FreeStyleBuild.class)));
+        assertTrue(ClassUtils.findSubclasses(Job.class).containsAll(Arrays.asList(AbstractProject.class, Project.class, FreeStyleProject.class)));
+        assertTrue(ClassUtils.findSubclasses(Cause.class).contains(Cause.UserIdCause.class));
+    }
+}
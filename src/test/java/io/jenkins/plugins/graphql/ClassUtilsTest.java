@@ -51,4 +51,21 @@ public class ClassUtilsTest {
         );
     }
 
+    @Test
+    public void findSubclasses() {
+        ClassUtils.setAllClassesCache(MockClassUtils.mock_getAllClassesList());
+
+        Set<Class<?>> causes = ClassUtils.findSubclasses(hudson.model.Cause.class);
+        assertThat(
+            causes,
+            Matchers.hasItems(
+                hudson.model.Cause.class,
+                hudson.model.Cause.UserIdCause.class,
+                hudson.model.Cause.UpstreamCause.class
+            )
+        );
+        assertThat(causes, Matchers.not(Matchers.hasItem(hudson.model.CauseAction.class)));
+        // not exportable, so never returned
+        assertThat(ClassUtils.findSubclasses(Object.class), Matchers.not(Matchers.hasItem(hudson.model.Action.class)));
+    }
 }
@@ -0,0 +1,71 @@
+package io.jenkins.plugins.graphql;
+
+import io.jenkins.plugins.graphql.json.JsonStreamWriter;
+import org.apache.commons.io.output.CountingOutputStream;
+import org.apache.commons.io.output.NullOutputStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compresses an {@code allItems { name url color builds { number result timestamp } }}
+ * response for 500 jobs. Time per operation is the CPU a response costs, the
+ * sizes printed at setup are what it saves on the wire.
+ */
+@State(Scope.Benchmark)
+public class CompressionBenchmark {
+    @Param({"GZIP", "DEFLATE"})
+    public ResponseCompression.Encoding encoding;
+
+    @Param({"1", "6", "9"})
+    public int level;
+
+    private byte[] response;
+
+    @Setup
+    public void setup() throws IOException {
+        List<Object> items = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            List<Object> builds = new ArrayList<>();
+            for (int number = 10; number > 0; number--) {
+                Map<String, Object> build = new LinkedHashMap<>();
+                build.put("number", number);
+                build.put("result", number % 3 == 0 ? "FAILURE" : "SUCCESS");
+                build.put("timestamp", 1593734400000L + i * 3600000L + number * 60000L);
+                builds.add(build);
+            }
+            Map<String, Object> item = new LinkedHashMap<>();
+            item.put("name", "job-" + i);
+            item.put("url", "http://jenkins.example.com/job/folder/job/job-" + i + "/");
+            item.put("color", i % 7 == 0 ? "red" : "blue");
+            item.put("builds", builds);
+            items.add(item);
+        }
+        ByteArrayOutputStream json = new ByteArrayOutputStream();
+        try (JsonStreamWriter writer = new JsonStreamWriter(json)) {
+            writer.write(Collections.singletonMap("data", Collections.singletonMap("allItems", items)));
+        }
+        response = json.toByteArray();
+        System.out.println(encoding + " level " + level + ": " + response.length + " bytes -> " + compress() + " bytes");
+    }
+
+    @Benchmark
+    public long compress() throws IOException {
+        CountingOutputStream sent = new CountingOutputStream(NullOutputStream.NULL_OUTPUT_STREAM);
+        try (OutputStream out = ResponseCompression.compress(sent, encoding, level)) {
+            out.write(response);
+        }
+        return sent.getByteCount();
+    }
+}
@@ -0,0 +1,97 @@
+package io.jenkins.plugins.graphql;
+
+import graphql.ExecutionInput;
+import graphql.execution.preparsed.PreparsedDocumentEntry;
+import graphql.parser.Parser;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class DocumentCacheTest {
+    private final int maxEntries = DocumentCache.MAX_ENTRIES;
+    private final long maxQueryChars = DocumentCache.MAX_QUERY_CHARS;
+
+    private final AtomicInteger parsed = new AtomicInteger();
+    private final Function<ExecutionInput, PreparsedDocumentEntry> parse = input -> {
+        parsed.incrementAndGet();
+        return new PreparsedDocumentEntry(new Parser().parseDocument(input.getQuery()));
+    };
+
+    @After
+    public void reset() {
+        DocumentCache.MAX_ENTRIES = maxEntries;
+        DocumentCache.MAX_QUERY_CHARS = maxQueryChars;
+    }
+
+    private static ExecutionInput query(String query) {
+        return ExecutionInput.newExecutionInput().query(query).build();
+    }
+
+    @Test
+    public void hit() {
+        DocumentCache cache = new DocumentCache();
+        PreparsedDocumentEntry first = cache.getDocument(query("{ a }"), parse);
+        assertSame(first, cache.getDocument(query("{ a }"), parse));
+        assertEquals(1, parsed.get());
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    public void isQuery() {
+        DocumentCache cache = new DocumentCache();
+        assertTrue(cache.isQuery(new GraphQLRequest("{ a }", null, null, null)));
+        assertFalse(cache.isQuery(new GraphQLRequest("mutation { a }", null, null, null)));
+        assertTrue(cache.isQuery(new GraphQLRequest("query Q { a } mutation M { a }", "Q", null, null)));
+        assertFalse(cache.isQuery(new GraphQLRequest("query Q { a } mutation M { a }", "M", null, null)));
+        assertTrue(cache.isQuery(new GraphQLRequest("{ a", null, null, null)));
+    }
+
+    @Test
+    public void isQueryUsesTheCachedDocument() {
+        DocumentCache cache = new DocumentCache();
+        // cached under the text of a mutation, so the answer can only come from the cache
+        cache.getDocument(query("mutation { a }"), input -> new PreparsedDocumentEntry(new Parser().parseDocument("{ a }")));
+        assertTrue(cache.isQuery(new GraphQLRequest("mutation { a }", null, null, null)));
+    }
+
+    @Test
+    public void leastRecentlyUsedIsEvicted() {
+        DocumentCache.MAX_ENTRIES = 2;
+        DocumentCache cache = new DocumentCache();
+        cache.getDocument(query("{ a }"), parse);
+        cache.getDocument(query("{ b }"), parse);
+        cache.getDocument(query("{ a }"), parse);
+        cache.getDocument(query("{ c }"), parse);
+        assertEquals(2, cache.getSize());
+        assertEquals(1, cache.getEvictions());
+
+        cache.getDocument(query("{ a }"), parse);
+        assertEquals(3, parsed.get());
+        cache.getDocument(query("{ b }"), parse);
+        assertEquals(4, parsed.get());
+    }
+
+    @Test
+    public void boundedByQueryLength() {
+        DocumentCache.MAX_QUERY_CHARS = 100;
+        DocumentCache cache = new DocumentCache();
+        for (int i = 0; i < 30; i++) {
+            cache.getDocument(query(String.format("{ a%02d }", i)), parse);
+        }
+        assertEquals(100 / "{ a00 }".length(), cache.getSize());
+        assertEquals(cache.getSize() * "{ a00 }".length(), cache.getQueryChars());
+
+        // too big to cache at all
+        cache.getDocument(query("{ aVeryLongFieldName }"), parse);
+        cache.getDocument(query("{ aVeryLongFieldName }"), parse);
+        assertEquals(32, parsed.get());
+    }
+}
@@ -0,0 +1,47 @@
+package io.jenkins.plugins.graphql;
+
+import hudson.security.ACL;
+import hudson.security.ACLContext;
+import jenkins.model.Jenkins;
+import org.acegisecurity.Authentication;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class FetchExecutorTest {
+    @Test
+    public void runsAsTheCaller() throws Exception {
+        Thread caller = Thread.currentThread();
+        CompletableFuture<Thread> thread;
+        CompletableFuture<Authentication> authentication;
+        try (ACLContext ignored = ACL.as(ACL.SYSTEM)) {
+            thread = FetchExecutor.get().supply(Thread::currentThread);
+            authentication = FetchExecutor.get().supply(Jenkins::getAuthentication);
+        }
+        assertNotSame(caller, thread.get(10, TimeUnit.SECONDS));
+        assertSame(ACL.SYSTEM, authentication.get(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void failuresComplete() throws Exception {
+        CompletableFuture<Object> future = FetchExecutor.get().supply(() -> {
+            throw new IOException("unreadable");
+        });
+        try {
+            future.get(10, TimeUnit.SECONDS);
+            fail("should have failed");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IOException);
+            assertEquals("unreadable", e.getCause().getMessage());
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package io.jenkins.plugins.graphql;
+
+import org.kohsuke.stapler.export.ModelBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Proxy;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Expands every interface/abstract class of {@link MockClassUtils} into its
+ * exportable subclasses, like a schema build does.
+ *
+ * The class set is scaled up with proxy classes (one per mocked interface
+ * per copy), standing in for the unexportable classes that make up most of
+ * a real controller's class set.
+ */
+@State(Scope.Benchmark)
+public class FindSubclassesBenchmark {
+    @Param({"1", "10", "50"})
+    public int scale;
+
+    private Set<Class<?>> classes;
+    private List<Class<?>> interfaces;
+    private ModelBuilder modelBuilder;
+
+    @Setup
+    public void setup() {
+        Set<Class<?>> mocked = MockClassUtils.mock_getAllClassesList();
+        interfaces = mocked.stream()
+            .filter(c -> Modifier.isInterface(c.getModifiers()) || Modifier.isAbstract(c.getModifiers()))
+            .collect(Collectors.toList());
+
+        classes = new HashSet<>(mocked);
+        for (int i = 1; i < scale; i++) {
+            ClassLoader loader = new URLClassLoader(new URL[0], FindSubclassesBenchmark.class.getClassLoader());
+            for (Class<?> clazz : interfaces) {
+                if (clazz.isInterface() && Modifier.isPublic(clazz.getModifiers())) {
+                    classes.add(Proxy.newProxyInstance(loader, new Class<?>[]{clazz}, (proxy, method, args) -> null).getClass());
+                }
+            }
+        }
+        modelBuilder = new ModelBuilder();
+        ClassUtils.setAllClassesCache(classes);
+    }
+
+    /**
+     * What {@link ClassUtils#findSubclasses(Class)} used to do, scan every class.
+     */
+    private static Set<Class<?>> linearScan(ModelBuilder modelBuilder, Set<Class<?>> classes, Class<?> interfaceClass) {
+        Set<Class<?>> subClasses = new HashSet<>();
+        for (Class<?> clazz : classes) {
+            if (interfaceClass.isAssignableFrom(clazz)) {
+                try {
+                    modelBuilder.get(clazz);
+                    subClasses.add(clazz);
+                } catch (org.kohsuke.stapler.export.NotExportableException e) {
+                    // skip
+                }
+            }
+        }
+        return subClasses;
+    }
+
+    @Benchmark
+    public void linearScan(Blackhole blackhole) {
+        for (Class<?> clazz : interfaces) {
+            blackhole.consume(linearScan(modelBuilder, classes, clazz));
+        }
+    }
+
+    @Benchmark
+    public void subclassIndex(Blackhole blackhole) {
+        for (Class<?> clazz : interfaces) {
+            blackhole.consume(ClassUtils.findSubclasses(clazz));
+        }
+    }
+
+    /**
+     * Includes building the index, which a schema build pays once.
+     */
+    @Benchmark
+    public void subclassIndexIncludingBuild(Blackhole blackhole) {
+        ClassUtils.setAllClassesCache(classes);
+        for (Class<?> clazz : interfaces) {
+            blackhole.consume(ClassUtils.findSubclasses(clazz));
+        }
+    }
+}
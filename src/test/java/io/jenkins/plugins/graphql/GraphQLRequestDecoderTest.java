@@ -0,0 +1,164 @@
+package io.jenkins.plugins.graphql;
+
+import io.jenkins.plugins.graphql.json.JsonParseException;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import javax.servlet.ReadListener;
+import javax.servlet.ServletInputStream;
+import javax.servlet.http.HttpServletRequest;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.when;
+
+public class GraphQLRequestDecoderTest {
+    private static HttpServletRequest request(String contentType, String body) throws IOException {
+        HttpServletRequest req = Mockito.mock(HttpServletRequest.class);
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        ByteArrayInputStream inputStream = new ByteArrayInputStream(bytes);
+        when(req.getContentType()).thenReturn(contentType);
+        when(req.getContentLength()).thenReturn(bytes.length);
+        when(req.getContentLengthLong()).thenReturn((long) bytes.length);
+        when(req.getInputStream()).thenReturn(new ServletInputStream() {
+            @Override
+            public boolean isFinished() {
+                return inputStream.available() == 0;
+            }
+
+            @Override
+            public boolean isReady() {
+                return true;
+            }
+
+            @Override
+            public void setReadListener(ReadListener readListener) {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public int read() {
+                return inputStream.read();
+            }
+        });
+        return req;
+    }
+
+    @Test
+    public void json() throws IOException {
+        GraphQLRequest request = GraphQLRequestDecoder.decode(request(
+            "application/json; charset=UTF-8",
+            "{\"query\": \"query ($id: ID) { allItems(id: $id) { id } }\", \"operationName\": null, \"variables\": {\"id\": \"job\"}}"
+        ));
+        assertEquals("query ($id: ID) { allItems(id: $id) { id } }", request.getQuery());
+        assertEquals("", request.getOperationName());
+        assertEquals(Collections.singletonMap("id", "job"), request.getVariables());
+    }
+
+    @Test
+    public void jsonVariablesAsString() throws IOException {
+        GraphQLRequest request = GraphQLRequestDecoder.decode(request(
+            "application/json",
+            "{\"query\": \"{ whoAmI { name } }\", \"variables\": \"{\\\"id\\\": 1}\"}"
+        ));
+        assertEquals(Collections.singletonMap("id", 1), request.getVariables());
+    }
+
+    @Test
+    public void graphql() throws IOException {
+        HttpServletRequest req = request("application/graphql", "{ whoAmI { name } }");
+        when(req.getParameter("variables")).thenReturn("{\"a\": true}");
+        GraphQLRequest request = GraphQLRequestDecoder.decode(req);
+        assertEquals("{ whoAmI { name } }", request.getQuery());
+        assertEquals(Collections.singletonMap("a", true), request.getVariables());
+    }
+
+    @Test
+    public void form() throws IOException {
+        HttpServletRequest req = request("application/x-www-form-urlencoded", "");
+        when(req.getParameter("query")).thenReturn("{ whoAmI { name } }");
+        when(req.getParameter("operationName")).thenReturn("me");
+        when(req.getParameter("variables")).thenReturn("{\"a\": \"b\"}");
+        GraphQLRequest request = GraphQLRequestDecoder.decode(req);
+        assertEquals("{ whoAmI { name } }", request.getQuery());
+        assertEquals("me", request.getOperationName());
+        assertEquals(Collections.singletonMap("a", "b"), request.getVariables());
+    }
+
+    @Test
+    public void batch() throws IOException {
+        GraphQLBatchRequest batch = GraphQLRequestDecoder.decodeBatch(request(
+            "application/json",
+            "[{\"query\": \"{ whoAmI { name } }\"}, {\"query\": \"query ($id: ID) { allItems(id: $id) { id } }\", \"variables\": {\"id\": \"job\"}}]"
+        ));
+        assertTrue(batch.isBatch());
+        assertEquals(2, batch.getRequests().size());
+        assertEquals("{ whoAmI { name } }", batch.getRequests().get(0).getQuery());
+        assertEquals(Collections.singletonMap("id", "job"), batch.getRequests().get(1).getVariables());
+    }
+
+    @Test
+    public void batchTooLarge() throws IOException {
+        int max = GraphQLRequestDecoder.MAX_BATCH_SIZE;
+        GraphQLRequestDecoder.MAX_BATCH_SIZE = 1;
+        try {
+            GraphQLRequestDecoder.decodeBatch(request("application/json", "[{\"query\": \"{ a }\"}, {\"query\": \"{ b }\"}]"));
+            fail();
+        } catch (JsonParseException e) {
+            // expected
+        } finally {
+            GraphQLRequestDecoder.MAX_BATCH_SIZE = max;
+        }
+    }
+
+    @Test(expected = JsonParseException.class)
+    public void batchWhereOneIsExpected() throws IOException {
+        GraphQLRequestDecoder.decode(request("application/json", "[{\"query\": \"{ a }\"}]"));
+    }
+
+    @Test
+    public void emptyBody() throws IOException {
+        assertEquals("", GraphQLRequestDecoder.decode(request("application/json", "")).getQuery());
+    }
+
+    @Test(expected = JsonParseException.class)
+    public void malformed() throws IOException {
+        GraphQLRequestDecoder.decode(request("application/json", "{\"query\": "));
+    }
+
+    @Test
+    public void tooLarge() throws IOException {
+        long max = GraphQLRequestDecoder.MAX_BODY_BYTES;
+        GraphQLRequestDecoder.MAX_BODY_BYTES = 10;
+        try {
+            GraphQLRequestDecoder.decode(request("application/json", "{\"query\": \"{ whoAmI { name } }\"}"));
+            fail();
+        } catch (GraphQLRequestDecoder.TooLargeException e) {
+            // expected
+        } finally {
+            GraphQLRequestDecoder.MAX_BODY_BYTES = max;
+        }
+    }
+
+    @Test
+    public void tooLargeWithoutContentLength() throws IOException {
+        long max = GraphQLRequestDecoder.MAX_BODY_BYTES;
+        GraphQLRequestDecoder.MAX_BODY_BYTES = 10;
+        try {
+            HttpServletRequest req = request("application/json", "{\"query\": \"{ whoAmI { name } }\"}");
+            when(req.getContentLength()).thenReturn(-1);
+            when(req.getContentLengthLong()).thenReturn(-1L);
+            GraphQLRequestDecoder.decode(req);
+            fail();
+        } catch (GraphQLRequestDecoder.TooLargeException e) {
+            // expected
+        } finally {
+            GraphQLRequestDecoder.MAX_BODY_BYTES = max;
+        }
+    }
+}
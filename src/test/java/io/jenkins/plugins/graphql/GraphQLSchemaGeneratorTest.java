@@ -3,6 +3,7 @@ package io.jenkins.plugins.graphql;
 import com.cloudbees.plugins.credentials.ViewCredentialsAction;
 import com.gargoylesoftware.htmlunit.HttpMethod;
 import com.gargoylesoftware.htmlunit.WebRequest;
+import com.gargoylesoftware.htmlunit.WebResponse;
 import com.google.common.base.Charsets;
 import com.google.common.collect.Lists;
 import com.google.common.io.Resources;
@@ -10,44 +11,70 @@ import com.google.gson.Gson;
 import graphql.ExecutionInput;
 import graphql.ExecutionResult;
 import graphql.GraphQL;
+import graphql.Scalars;
+import graphql.execution.instrumentation.InstrumentationContext;
+import graphql.execution.instrumentation.SimpleInstrumentation;
+import graphql.execution.instrumentation.parameters.InstrumentationExecutionParameters;
 import graphql.schema.GraphQLFieldDefinition;
 import graphql.schema.GraphQLObjectType;
 import graphql.schema.GraphQLOutputType;
 import graphql.schema.GraphQLSchema;
+import graphql.util.FpKit;
 import hudson.model.FreeStyleProject;
 import hudson.model.Job;
 import hudson.model.Run;
 import hudson.model.User;
 import hudson.security.csrf.CrumbIssuer;
 import io.jenkins.plugins.graphql.utils.JsonMapFlattener;
+import jenkins.model.JenkinsLocationConfiguration;
 import io.jenkins.plugins.graphql.utils.SchemaFieldBuilder;
 import io.jenkins.plugins.graphql.utils.SchemaTypeBuilder;
 import io.jenkins.plugins.graphql.utils.SchemaTypeResponse;
+import net.sf.json.JSONArray;
 import net.sf.json.JSONObject;
+import org.dataloader.BatchLoader;
+import org.dataloader.DataLoader;
+import org.dataloader.DataLoaderRegistry;
 import org.junit.Before;
 import org.junit.ComparisonFailure;
 import org.junit.Ignore;
 import org.junit.Rule;
 import org.junit.Test;
 import org.jvnet.hudson.test.JenkinsRule;
+import org.jvnet.hudson.test.MockFolder;
+import org.jvnet.hudson.test.TestExtension;
 import org.kohsuke.stapler.export.ExportedBean;
+import org.kohsuke.stapler.export.Property;
 import org.mockito.Mockito;
 
 import edu.umd.cs.findbugs.annotations.NonNull;
 import java.io.IOException;
+import java.io.StringWriter;
 import java.net.URL;
+import java.net.URLEncoder;
+import java.util.AbstractCollection;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Calendar;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.GregorianCalendar;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 
 public class GraphQLSchemaGeneratorTest {
     @Rule
@@ -70,10 +97,91 @@ public class GraphQLSchemaGeneratorTest {
         Builders builder = new Builders();
         builder.addExtraTopLevelClasses(Collections.singletonList(FreeStyleProject.class));
         builder.addExtraTopLevelClasses(Collections.singletonList(ViewCredentialsAction.class));
+        builder.addExtraTopLevelClasses(Collections.singletonList(MockFolder.class));
         graphQLSchema = builder.buildSchema();
         GraphQLRootAction.setBuiltSchema(graphQLSchema);
     }
 
+    @Test
+    public void parallelBuildMatchesSerial() {
+        boolean serial = Builders.SERIAL;
+        try {
+            Builders.SERIAL = true;
+            Builders serialBuilder = new Builders();
+            serialBuilder.addExtraTopLevelClasses(Collections.singletonList(FreeStyleProject.class));
+            serialBuilder.buildSchema();
+
+            Builders.SERIAL = false;
+            Builders parallelBuilder = new Builders();
+            parallelBuilder.addExtraTopLevelClasses(Collections.singletonList(FreeStyleProject.class));
+            parallelBuilder.buildSchema();
+
+            assertEquals(serialBuilder.getSchemaDefinition(), parallelBuilder.getSchemaDefinition());
+            assertEquals(serialBuilder.getPropertyMap(), parallelBuilder.getPropertyMap());
+        } finally {
+            Builders.SERIAL = serial;
+        }
+    }
+
+    @Test
+    public void schemaTypeCache() {
+        SchemaTypeCache cache = new SchemaTypeCache(graphQLSchema);
+        GraphQLObjectType type = cache.getObjectType(FreeStyleProject.class);
+        assertNotNull(type);
+        assertEquals(ClassUtils.getGraphQLClassName(FreeStyleProject.class), type.getName());
+        assertSame(type, cache.getObjectType(FreeStyleProject.class));
+        assertNull(cache.getObjectType(GraphQLSchemaGeneratorTest.class));
+    }
+
+    @Test
+    public void filterRepresentable() throws IOException {
+        SchemaTypeCache cache = new SchemaTypeCache(graphQLSchema);
+        FreeStyleProject project = j.createFreeStyleProject();
+
+        List<Object> representable = Lists.newArrayList(project, null);
+        assertEquals(representable, Lists.newArrayList(cache.filterRepresentable(representable)));
+        assertEquals(
+            representable,
+            Lists.newArrayList(cache.filterRepresentable(Lists.newArrayList(project, this, null)))
+        );
+    }
+
+    @Test
+    public void filterRepresentableWalksLazyCollectionsOnce() throws IOException {
+        SchemaTypeCache cache = new SchemaTypeCache(graphQLSchema);
+        List<Object> elements = Lists.newArrayList(j.createFreeStyleProject(), this, j.createFreeStyleProject());
+        AtomicInteger iterated = new AtomicInteger();
+        // like RunList, which loads builds as it goes and counts them by walking them
+        Collection<Object> lazy = new AbstractCollection<Object>() {
+            @Override
+            public Iterator<Object> iterator() {
+                Iterator<Object> iterator = elements.iterator();
+                return new Iterator<Object>() {
+                    @Override
+                    public boolean hasNext() {
+                        return iterator.hasNext();
+                    }
+
+                    @Override
+                    public Object next() {
+                        iterated.incrementAndGet();
+                        return iterator.next();
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                throw new AssertionError("size() walks the whole collection");
+            }
+        };
+
+        // as graphql-java reads a list value
+        Collection<Object> completed = FpKit.toCollection(cache.filterRepresentable(lazy));
+        assertEquals(Arrays.asList(elements.get(0), elements.get(2)), new ArrayList<>(completed));
+        assertEquals(elements.size(), iterated.get());
+    }
+
     @Test
     public void timestampAsRFC() {
         GregorianCalendar c = new GregorianCalendar();
@@ -123,6 +231,136 @@ public class GraphQLSchemaGeneratorTest {
         );
     }
 
+    private Map<String, Object> executeQuery(String query) {
+        ExecutionResult executeResult = GraphQL.newGraphQL(graphQLSchema).build().execute(query);
+        if (executeResult.getErrors().size() != 0) {
+            throw new Error(executeResult.getErrors().get(0).getMessage());
+        }
+        return executeResult.getData();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void allItemsConnection() throws IOException {
+        MockFolder folder = j.createFolder("b");
+        folder.createProject(FreeStyleProject.class, "nested");
+        j.createFreeStyleProject("c");
+        j.createFreeStyleProject("a");
+        j.createFreeStyleProject("d");
+
+        List<String> names = new ArrayList<>();
+        String after = null;
+        int pages = 0;
+        while (true) {
+            Map<String, Object> connection = (Map<String, Object>) executeQuery(
+                "query { allItemsConnection(first: 2" + (after == null ? "" : ", after: \"" + after + "\"") + ") "
+                    + "{ edges { cursor node { fullName } } pageInfo { hasNextPage endCursor } } }"
+            ).get("allItemsConnection");
+            pages++;
+            for (Map<String, Object> edge : (List<Map<String, Object>>) connection.get("edges")) {
+                names.add((String) ((Map<String, Object>) edge.get("node")).get("fullName"));
+            }
+            Map<String, Object> pageInfo = (Map<String, Object>) connection.get("pageInfo");
+            if (!(Boolean) pageInfo.get("hasNextPage")) {
+                break;
+            }
+            after = (String) pageInfo.get("endCursor");
+        }
+        assertEquals(Arrays.asList("a", "b", "b/nested", "c", "d"), names);
+        assertEquals(3, pages);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void allUsersConnection() {
+        User.get("bob", true, Collections.emptyMap());
+        User.get("alice", true, Collections.emptyMap());
+        User.get("carol", true, Collections.emptyMap());
+
+        Map<String, Object> connection = (Map<String, Object>) executeQuery(
+            "query { allUsersConnection(first: 2) { edges { node { id } } pageInfo { hasNextPage endCursor } } }"
+        ).get("allUsersConnection");
+        assertEquals(2, ((List<?>) connection.get("edges")).size());
+        Map<String, Object> pageInfo = (Map<String, Object>) connection.get("pageInfo");
+        assertEquals(true, pageInfo.get("hasNextPage"));
+
+        connection = (Map<String, Object>) executeQuery(
+            "query { allUsersConnection(first: 2, after: \"" + pageInfo.get("endCursor") + "\") { edges { node { id } } pageInfo { hasNextPage } } }"
+        ).get("allUsersConnection");
+        assertEquals(
+            Collections.singletonMap("node", Collections.singletonMap("id", "carol")),
+            ((List<?>) connection.get("edges")).get(0)
+        );
+        assertEquals(false, ((Map<String, Object>) connection.get("pageInfo")).get("hasNextPage"));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void batchedReferences() throws Exception {
+        FreeStyleProject one = j.createFreeStyleProject("one");
+        FreeStyleProject two = j.createFreeStyleProject("two");
+        j.buildAndAssertSuccess(one);
+        j.buildAndAssertSuccess(two);
+        j.buildAndAssertSuccess(two);
+
+        Builders builder = new Builders();
+        builder.addExtraTopLevelClasses(Collections.singletonList(FreeStyleProject.class));
+        GraphQLSchema batchingSchema = builder.buildSchema();
+
+        DataLoaderRegistry registry = BatchLoaderProvider.newDataLoaderRegistry();
+        ExecutionInput executionInput = ExecutionInput.newExecutionInput()
+            .query("query { allItems { name ... on hudson_model_FreeStyleProject { lastBuild { number } lastSuccessfulBuild { number } } } }")
+            .context(new RequestContext())
+            .dataLoaderRegistry(registry)
+            .build();
+        ExecutionResult executeResult = GraphQL.newGraphQL(batchingSchema).build().execute(executionInput);
+        assertEquals(Collections.emptyList(), executeResult.getErrors());
+
+        Map<String, Object> numbers = new HashMap<>();
+        for (Map<String, Object> item : (List<Map<String, Object>>) ((Map<String, Object>) executeResult.getData()).get("allItems")) {
+            numbers.put((String) item.get("name"), Arrays.asList(
+                ((Map<String, Object>) item.get("lastBuild")).get("number"),
+                ((Map<String, Object>) item.get("lastSuccessfulBuild")).get("number")
+            ));
+        }
+        assertEquals(Arrays.asList(1, 1), numbers.get("one"));
+        assertEquals(Arrays.asList(2, 2), numbers.get("two"));
+
+        // both properties of both jobs were resolved in a single batch
+        DataLoader<PropertyFetch, Object> runs = registry.getDataLoader(new RunsBatchLoaderProvider().getName());
+        assertEquals(4, runs.getStatistics().getBatchLoadCount());
+        assertEquals(1, runs.getStatistics().getBatchInvokeCount());
+    }
+
+    @TestExtension("batchedReferences")
+    public static class RunsBatchLoaderProvider extends BatchLoaderProvider {
+        @Override
+        public boolean isApplicable(@NonNull Property property) {
+            return Run.class.isAssignableFrom(property.getType());
+        }
+
+        @NonNull
+        @Override
+        public BatchLoader<PropertyFetch, Object> createBatchLoader() {
+            return keys -> {
+                List<Object> values = new ArrayList<>();
+                for (PropertyFetch fetch : keys) {
+                    try {
+                        values.add(fetch.fetch());
+                    } catch (Exception e) {
+                        values.add(e);
+                    }
+                }
+                return CompletableFuture.completedFuture(values);
+            };
+        }
+    }
+
+    @Test
+    public void nothingIsBatchedByDefault() {
+        assertEquals(Collections.emptySet(), BatchLoaderProvider.newDataLoaderRegistry().getKeys());
+    }
+
     @Test
     public void getJobByNameNonExistent() throws IOException {
         j.createFreeStyleProject("one");
@@ -202,6 +440,189 @@ public class GraphQLSchemaGeneratorTest {
         return result.getJSONObject("data");
     }
 
+    @Test
+    public void batch() throws Exception {
+        j.createFreeStyleProject("one");
+        CrumbIssuer crumbIssuer = j.jenkins.getCrumbIssuer();
+        assertNotNull(crumbIssuer);
+
+        JSONArray body = new JSONArray();
+        body.add(Collections.singletonMap("query", "query { whoAmI { name } }"));
+        body.add(Collections.singletonMap("query", "query { allItems { name } }"));
+        body.add(Collections.singletonMap("query", "query { nope }"));
+
+        WebRequest req = new WebRequest(new URL(j.jenkins.getRootUrl() + "graphql/"), HttpMethod.POST);
+        req.setAdditionalHeader(crumbIssuer.getCrumbRequestField(), crumbIssuer.getCrumb());
+        req.setAdditionalHeader("Content-Type", "application/json");
+        req.setRequestBody(body.toString());
+        JSONArray results = JSONArray.fromObject(j.createWebClient().getPage(req).getWebResponse().getContentAsString());
+
+        assertEquals(3, results.size());
+        assertEquals("anonymous", results.getJSONObject(0).getJSONObject("data").getJSONObject("whoAmI").getString("name"));
+        assertEquals("one", results.getJSONObject(1).getJSONObject("data").getJSONArray("allItems").getJSONObject(0).getString("name"));
+        assertEquals(1, results.getJSONObject(2).getJSONArray("errors").size());
+    }
+
+    @Test
+    public void batchOperationsAreCachedByWhatEachRead() throws Exception {
+        j.createFreeStyleProject("one");
+        CrumbIssuer crumbIssuer = j.jenkins.getCrumbIssuer();
+        assertNotNull(crumbIssuer);
+
+        JSONArray body = new JSONArray();
+        body.add(Collections.singletonMap("query", "query { allItems { name } }"));
+        body.add(Collections.singletonMap("query", "query { allUsers { id } }"));
+
+        WebRequest req = new WebRequest(new URL(j.jenkins.getRootUrl() + "graphql/"), HttpMethod.POST);
+        req.setAdditionalHeader(crumbIssuer.getCrumbRequestField(), crumbIssuer.getCrumb());
+        req.setAdditionalHeader("Content-Type", "application/json");
+        req.setRequestBody(body.toString());
+        JenkinsRule.WebClient wc = j.createWebClient();
+        wc.getPage(req);
+
+        // a change to users leaves the operation that only read items cached
+        ResponseCache.get().invalidate(ResponseCache.Dependency.USERS);
+        long hits = ResponseCache.get().getHits();
+        JSONArray results = JSONArray.fromObject(wc.getPage(req).getWebResponse().getContentAsString());
+        assertEquals("one", results.getJSONObject(0).getJSONObject("data").getJSONArray("allItems").getJSONObject(0).getString("name"));
+        assertEquals(1, ResponseCache.get().getHits() - hits);
+    }
+
+    @Test
+    public void getWithETag() throws Exception {
+        URL url = new URL(j.jenkins.getRootUrl() + "graphql/?query=" + URLEncoder.encode("query { whoAmI { name } }", "UTF-8"));
+        JenkinsRule.WebClient wc = j.createWebClient();
+        wc.getOptions().setThrowExceptionOnFailingStatusCode(false);
+
+        WebResponse first = wc.getPage(new WebRequest(url)).getWebResponse();
+        assertEquals(200, first.getStatusCode());
+        assertEquals("anonymous", JSONObject.fromObject(first.getContentAsString()).getJSONObject("data").getJSONObject("whoAmI").getString("name"));
+        String etag = first.getResponseHeaderValue("ETag");
+        assertNotNull(etag);
+        assertEquals(GraphQLRootAction.CACHE_CONTROL, first.getResponseHeaderValue("Cache-Control"));
+
+        WebRequest revalidate = new WebRequest(url);
+        revalidate.setAdditionalHeader("If-None-Match", etag);
+        WebResponse second = wc.getPage(revalidate).getWebResponse();
+        assertEquals(304, second.getStatusCode());
+        assertEquals("", second.getContentAsString());
+    }
+
+    @Test
+    public void urlsWithoutRootUrl() throws Exception {
+        j.createFreeStyleProject("one");
+        JenkinsLocationConfiguration.get().setUrl(null);
+
+        URL url = new URL(j.getURL(), "graphql/?query=" + URLEncoder.encode("query { allItems { url } }", "UTF-8"));
+        JSONObject result = JSONObject.fromObject(j.createWebClient().getPage(new WebRequest(url)).getWebResponse().getContentAsString());
+
+        assertFalse(result.toString(), result.has("errors"));
+        assertEquals(
+            j.getURL() + "job/one/",
+            result.getJSONObject("data").getJSONArray("allItems").getJSONObject(0).getString("url")
+        );
+    }
+
+    @Test
+    public void backgroundBuild() throws Exception {
+        boolean background = SchemaManager.BACKGROUND_BUILD;
+        long schemaWait = GraphQLRootAction.SCHEMA_WAIT_MS;
+        SchemaManager previous = SchemaManager.get();
+        SchemaManager manager = new SchemaManager();
+        try {
+            SchemaManager.BACKGROUND_BUILD = true;
+            GraphQLRootAction.SCHEMA_WAIT_MS = 100;
+            SchemaManager.set(manager);
+
+            JenkinsRule.WebClient wc = j.createWebClient();
+            wc.getOptions().setThrowExceptionOnFailingStatusCode(false);
+            URL url = new URL(j.getURL(), "graphql/?query=" + URLEncoder.encode("query { whoAmI { name } }", "UTF-8"));
+            URL status = new URL(j.getURL(), "graphql/api/json?depth=1");
+
+            // the builder thread can't get past the manager's lock until we let go
+            synchronized (manager) {
+                manager.start();
+                WebResponse response = wc.getPage(new WebRequest(url)).getWebResponse();
+                assertEquals(503, response.getStatusCode());
+                assertEquals(String.valueOf(GraphQLRootAction.RETRY_AFTER_SECONDS), response.getResponseHeaderValue("Retry-After"));
+                assertEquals(
+                    "BUILDING",
+                    JSONObject.fromObject(wc.getPage(new WebRequest(status)).getWebResponse().getContentAsString()).getJSONObject("schema").getString("state")
+                );
+            }
+
+            assertNotNull(manager.awaitGraphQL(1, TimeUnit.MINUTES));
+            assertEquals(
+                "READY",
+                JSONObject.fromObject(wc.getPage(new WebRequest(status)).getWebResponse().getContentAsString()).getJSONObject("schema").getString("state")
+            );
+            WebResponse response = wc.getPage(new WebRequest(url)).getWebResponse();
+            assertEquals(200, response.getStatusCode());
+            assertEquals("anonymous", JSONObject.fromObject(response.getContentAsString()).getJSONObject("data").getJSONObject("whoAmI").getString("name"));
+        } finally {
+            SchemaManager.set(previous);
+            SchemaManager.BACKGROUND_BUILD = background;
+            GraphQLRootAction.SCHEMA_WAIT_MS = schemaWait;
+        }
+    }
+
+    @Test
+    public void getMutation() throws Exception {
+        JenkinsRule.WebClient wc = j.createWebClient();
+        wc.getOptions().setThrowExceptionOnFailingStatusCode(false);
+        URL url = new URL(j.jenkins.getRootUrl() + "graphql/?query=" + URLEncoder.encode("mutation { doSomething }", "UTF-8"));
+
+        WebResponse response = wc.getPage(new WebRequest(url)).getWebResponse();
+        assertEquals(405, response.getStatusCode());
+        assertEquals("POST", response.getResponseHeaderValue("Allow"));
+    }
+
+    @Test
+    public void batchOperationFailing() throws IOException {
+        GraphQLSchema schema = GraphQLSchema.newSchema()
+            .query(GraphQLObjectType.newObject().name("QueryType").field(GraphQLFieldDefinition.newFieldDefinition()
+                .name("ok")
+                .type(Scalars.GraphQLString)
+                .dataFetcher(environment -> "ok")
+                .build()
+            ).build())
+            .build();
+        GraphQL graphQL = GraphQL.newGraphQL(schema).instrumentation(new SimpleInstrumentation() {
+            @Override
+            public InstrumentationContext<ExecutionResult> beginExecution(InstrumentationExecutionParameters parameters) {
+                if ("thrown".equals(parameters.getOperation())) {
+                    throw new IllegalStateException("thrown");
+                }
+                return super.beginExecution(parameters);
+            }
+
+            @Override
+            public CompletableFuture<ExecutionResult> instrumentExecutionResult(ExecutionResult executionResult, InstrumentationExecutionParameters parameters) {
+                if ("failed".equals(parameters.getOperation())) {
+                    CompletableFuture<ExecutionResult> failed = new CompletableFuture<>();
+                    failed.completeExceptionally(new IllegalStateException("failed"));
+                    return failed;
+                }
+                return super.instrumentExecutionResult(executionResult, parameters);
+            }
+        }).build();
+
+        RequestContext context = new RequestContext();
+        DataLoaderRegistry registry = new DataLoaderRegistry();
+        List<JSONObject> results = new ArrayList<>();
+        for (String operation : new String[] {"fine", "thrown", "failed"}) {
+            StringWriter json = new StringWriter();
+            GraphQLRootAction.executeOperation(new GraphQLRequest("query " + operation + " { ok }", operation, null, null), graphQL, context, registry)
+                .join()
+                .writeTo(json);
+            results.add(JSONObject.fromObject(json.toString()));
+        }
+
+        assertEquals("ok", results.get(0).getJSONObject("data").getString("ok"));
+        assertEquals("thrown", results.get(1).getJSONArray("errors").getJSONObject(0).getString("message"));
+        assertEquals("failed", results.get(2).getJSONArray("errors").getJSONObject(0).getString("message"));
+    }
+
     @Test
     public void whoamiNoAuth() throws Exception {
         JSONObject data = postQuery(
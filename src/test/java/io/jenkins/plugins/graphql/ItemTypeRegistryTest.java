@@ -0,0 +1,43 @@
+package io.jenkins.plugins.graphql;
+
+import hudson.model.AbstractItem;
+import hudson.model.FreeStyleProject;
+import hudson.model.Job;
+import hudson.model.User;
+import org.junit.Test;
+
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+
+public class ItemTypeRegistryTest {
+    private final ItemTypeRegistry registry = new ItemTypeRegistry(Collections.singletonList(FreeStyleProject.class));
+
+    @Test
+    public void byJavaName() {
+        assertEquals(FreeStyleProject.class, registry.resolve("hudson.model.FreeStyleProject", AbstractItem.class));
+        assertEquals(Job.class, registry.resolve("hudson.model.Job", AbstractItem.class));
+    }
+
+    @Test
+    public void byGraphQLName() {
+        assertEquals(FreeStyleProject.class, registry.resolve("hudson_model_FreeStyleProject", AbstractItem.class));
+    }
+
+    @Test
+    public void defaultType() {
+        assertEquals(AbstractItem.class, registry.resolve(null, AbstractItem.class));
+        assertEquals(User.class, registry.resolve("", User.class));
+        assertEquals(User.class, registry.resolve("hudson.model.User", User.class));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unknown() {
+        registry.resolve("java.lang.Runtime", AbstractItem.class);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void itemTypesAreNotUsers() {
+        registry.resolve("hudson.model.FreeStyleProject", User.class);
+    }
+}
@@ -0,0 +1,85 @@
+package io.jenkins.plugins.graphql;
+
+import hudson.model.Item;
+import hudson.model.ItemGroup;
+import hudson.security.ACL;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class PermissionCacheTest {
+    @Test
+    public void decisionsAreRemembered() {
+        Item item = Mockito.mock(Item.class);
+        when(item.hasPermission(Item.READ)).thenReturn(true);
+
+        PermissionCache cache = new PermissionCache();
+        assertTrue(StreamUtils.isAllowed(item, cache));
+        assertTrue(StreamUtils.isAllowed(item, cache));
+        assertTrue(cache.hasPermission(item, Item.READ));
+
+        verify(item, times(1)).hasPermission(Item.READ);
+    }
+
+    @Test
+    public void childrenOfUnreadableItemsAreDenied() {
+        Item folder = Mockito.mock(Item.class, Mockito.withSettings().extraInterfaces(ItemGroup.class));
+        when(folder.hasPermission(Item.READ)).thenReturn(false);
+        Item child = Mockito.mock(Item.class);
+        when(child.getParent()).thenReturn((ItemGroup) folder);
+        when(child.hasPermission(Item.READ)).thenReturn(true);
+
+        PermissionCache cache = new PermissionCache();
+        assertFalse(StreamUtils.isAllowed(folder, cache));
+        assertFalse(StreamUtils.isAllowed(child, cache));
+
+        verify(child, never()).hasPermission(Item.READ);
+    }
+
+    @Test
+    public void siblingsSharingAnAclAskOnce() {
+        AtomicInteger checks = new AtomicInteger();
+        ACL acl = ACL.lambda((a, permission) -> {
+            checks.incrementAndGet();
+            return true;
+        });
+        ItemGroup folder = Mockito.mock(ItemGroup.class);
+        Item first = job(folder, acl);
+        Item second = job(folder, acl);
+
+        PermissionCache cache = new PermissionCache();
+        assertTrue(StreamUtils.isAllowed(first, cache));
+        assertTrue(StreamUtils.isAllowed(second, cache));
+
+        assertEquals(1, checks.get());
+    }
+
+    private static Item job(ItemGroup parent, ACL acl) {
+        Item job = Mockito.mock(Item.class);
+        when(job.getParent()).thenReturn(parent);
+        when(job.getACL()).thenReturn(acl);
+        when(job.hasPermission(Item.READ)).thenAnswer(invocation -> acl.hasPermission(Item.READ));
+        return job;
+    }
+
+    @Test
+    public void eachRequestDecidesAgain() {
+        Item item = Mockito.mock(Item.class);
+        when(item.hasPermission(Item.READ)).thenReturn(true);
+
+        assertTrue(StreamUtils.isAllowed(item, new RequestContext().getPermissionCache()));
+        assertTrue(StreamUtils.isAllowed(item, new RequestContext().getPermissionCache()));
+        assertTrue(StreamUtils.isAllowed(item));
+
+        verify(item, times(3)).hasPermission(Item.READ);
+    }
+}
@@ -0,0 +1,112 @@
+package io.jenkins.plugins.graphql;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.lang.StringUtils;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class PersistedQueriesTest {
+    private static final String QUERY = "{ whoAmI { name } }";
+
+    private final boolean persistToDisk = PersistedQueries.PERSIST_TO_DISK;
+    private final int maxFiles = PersistedQueries.MAX_FILES;
+    private final int maxFileBytes = PersistedQueries.MAX_FILE_BYTES;
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @After
+    public void restore() {
+        PersistedQueries.PERSIST_TO_DISK = persistToDisk;
+        PersistedQueries.MAX_FILES = maxFiles;
+        PersistedQueries.MAX_FILE_BYTES = maxFileBytes;
+    }
+
+    private static GraphQLRequest request(String query, Object version, String hash) {
+        Map<String, Object> persistedQuery = new HashMap<>();
+        persistedQuery.put("version", version);
+        persistedQuery.put("sha256Hash", hash);
+        return new GraphQLRequest(query, null, null, Collections.singletonMap(PersistedQueries.EXTENSION, persistedQuery));
+    }
+
+    private static void assertError(PersistedQueries queries, GraphQLRequest request, String code) {
+        try {
+            queries.resolve(request);
+            fail();
+        } catch (PersistedQueries.PersistedQueryException e) {
+            assertEquals(code, e.getCode());
+        }
+    }
+
+    @Test
+    public void notPersisted() throws Exception {
+        GraphQLRequest request = new GraphQLRequest(QUERY, null, null, null);
+        assertSame(request, new PersistedQueries().resolve(request));
+    }
+
+    @Test
+    public void registerThenLookup() throws Exception {
+        PersistedQueries queries = new PersistedQueries();
+        String hash = DigestUtils.sha256Hex(QUERY);
+
+        assertError(queries, request(null, 1, hash), "PERSISTED_QUERY_NOT_FOUND");
+        GraphQLRequest resolved = queries.resolve(request(QUERY, 1, hash));
+        assertEquals(QUERY, resolved.getQuery());
+        // not until it ran
+        assertError(queries, request(null, 1, hash), "PERSISTED_QUERY_NOT_FOUND");
+        queries.register(resolved);
+        assertEquals(QUERY, queries.resolve(request(null, 1, hash)).getQuery());
+
+        assertEquals(1, queries.getHits());
+        assertEquals(2, queries.getMisses());
+        assertEquals(1, queries.getRegistrations());
+    }
+
+    @Test
+    public void boundedOnDisk() throws Exception {
+        PersistedQueries.PERSIST_TO_DISK = true;
+        PersistedQueries.MAX_FILES = 2;
+        PersistedQueries.MAX_FILE_BYTES = 100;
+        File directory = tmp.newFolder();
+        PersistedQueries queries = new PersistedQueries(directory);
+
+        String[] texts = {"{ a }", "{ b }", "{ c }"};
+        for (int i = 0; i < texts.length; i++) {
+            queries.register(request(texts[i], 1, DigestUtils.sha256Hex(texts[i])));
+            File file = new File(directory, DigestUtils.sha256Hex(texts[i]) + ".graphql");
+            assertTrue(file.isFile());
+            // written one after the other, whatever the timestamp resolution
+            assertTrue(file.setLastModified(System.currentTimeMillis() - TimeUnit.MINUTES.toMillis(texts.length - i)));
+        }
+        assertFalse(new File(directory, DigestUtils.sha256Hex("{ a }") + ".graphql").exists());
+        assertEquals(2, directory.list().length);
+        assertEquals(1, queries.getFileEvictions());
+
+        String large = "{ " + StringUtils.repeat("a ", 100) + "}";
+        queries.register(request(large, 1, DigestUtils.sha256Hex(large)));
+        assertFalse(new File(directory, DigestUtils.sha256Hex(large) + ".graphql").exists());
+        assertEquals(large, queries.resolve(request(null, 1, DigestUtils.sha256Hex(large))).getQuery());
+    }
+
+    @Test
+    public void invalid() {
+        PersistedQueries queries = new PersistedQueries();
+        assertError(queries, request(QUERY, 2, DigestUtils.sha256Hex(QUERY)), "PERSISTED_QUERY_NOT_SUPPORTED");
+        assertError(queries, request(QUERY, 1, "abc"), "PERSISTED_QUERY_INVALID_HASH");
+        assertError(queries, request(QUERY, 1, DigestUtils.sha256Hex("{ other }")), "PERSISTED_QUERY_HASH_MISMATCH");
+    }
+}
@@ -0,0 +1,84 @@
+package io.jenkins.plugins.graphql;
+
+import org.kohsuke.stapler.export.Exported;
+import org.kohsuke.stapler.export.ExportedBean;
+import org.kohsuke.stapler.export.ModelBuilder;
+import org.kohsuke.stapler.export.Property;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads every property of a bean, the way a data fetcher does for each
+ * object in an {@code allItems { builds { ... } }} result.
+ */
+@State(Scope.Benchmark)
+public class PropertyAccessBenchmark {
+    @ExportedBean
+    public static class Bean {
+        @Exported
+        public String description = "description";
+
+        @Exported
+        public String getName() {
+            return "name";
+        }
+
+        @Exported
+        public int getNumber() {
+            return 42;
+        }
+
+        @Exported
+        public boolean isBuilding() {
+            return false;
+        }
+    }
+
+    private static final String TYPE_NAME = "io_jenkins_plugins_graphql_PropertyAccessBenchmark__Bean";
+
+    private final Bean bean = new Bean();
+    private Map<String, Property> propertyMap;
+    private String[] fieldNames;
+    private PropertyAccessor[] accessors;
+
+    @Setup
+    public void setup() {
+        List<Property> properties = new ModelBuilder().get(Bean.class).getProperties();
+        propertyMap = new HashMap<>();
+        fieldNames = new String[properties.size()];
+        accessors = new PropertyAccessor[properties.size()];
+        for (int i = 0; i < properties.size(); i++) {
+            Property property = properties.get(i);
+            propertyMap.put(TYPE_NAME + "#" + property.name, property);
+            fieldNames[i] = property.name;
+            accessors[i] = PropertyAccessor.of(property);
+        }
+    }
+
+    /**
+     * What every fetch used to do, look the property up by name and ask stapler for the value.
+     */
+    @Benchmark
+    public void propertyMapLookup(Blackhole blackhole) throws Exception {
+        for (String fieldName : fieldNames) {
+            if ("_class".equals(fieldName)) {
+                continue;
+            }
+            blackhole.consume(propertyMap.get(TYPE_NAME + "#" + fieldName).getValue(bean));
+        }
+    }
+
+    @Benchmark
+    public void boundAccessor(Blackhole blackhole) throws Exception {
+        for (PropertyAccessor accessor : accessors) {
+            blackhole.consume(accessor.get(bean));
+        }
+    }
+}
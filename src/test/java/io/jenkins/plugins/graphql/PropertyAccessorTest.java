@@ -0,0 +1,85 @@
+package io.jenkins.plugins.graphql;
+
+import org.junit.Test;
+import org.kohsuke.stapler.export.Exported;
+import org.kohsuke.stapler.export.ExportedBean;
+import org.kohsuke.stapler.export.ModelBuilder;
+import org.kohsuke.stapler.export.Property;
+
+import java.io.IOException;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class PropertyAccessorTest {
+    @ExportedBean
+    public static class PublicBean {
+        @Exported
+        public String field = "field";
+
+        @Exported
+        public String getName() {
+            return "name";
+        }
+
+        @Exported
+        public boolean isBuilding() {
+            return true;
+        }
+
+        @Exported(name = "renamed")
+        public int getNumber() {
+            return 42;
+        }
+
+        @Exported
+        public String getBroken() throws IOException {
+            throw new IOException("broken");
+        }
+    }
+
+    @ExportedBean
+    static class HiddenBean {
+        @Exported
+        public String getName() {
+            return "hidden";
+        }
+    }
+
+    private static List<Property> getProperties(Class<?> clazz) {
+        return new ModelBuilder().get(clazz).getProperties();
+    }
+
+    @Test
+    public void sameValuesAsStapler() throws Exception {
+        for (Class<?> clazz : new Class<?>[]{PublicBean.class, HiddenBean.class}) {
+            Object bean = clazz.getDeclaredConstructor().newInstance();
+            for (Property property : getProperties(clazz)) {
+                if ("broken".equals(property.name)) {
+                    continue;
+                }
+                PropertyAccessor accessor = PropertyAccessor.of(property);
+                assertTrue(clazz.getSimpleName() + "#" + property.name, accessor.isBound());
+                assertEquals(property.getValue(bean), accessor.get(bean));
+            }
+        }
+    }
+
+    @Test
+    public void exceptionsAreNotWrapped() throws Exception {
+        for (Property property : getProperties(PublicBean.class)) {
+            if ("broken".equals(property.name)) {
+                try {
+                    PropertyAccessor.of(property).get(new PublicBean());
+                    fail();
+                } catch (IOException e) {
+                    assertEquals("broken", e.getMessage());
+                }
+                return;
+            }
+        }
+        fail("broken is not exported");
+    }
+}
@@ -0,0 +1,112 @@
+package io.jenkins.plugins.graphql;
+
+import graphql.ExecutionInput;
+import graphql.ExecutionResult;
+import graphql.GraphQL;
+import graphql.GraphQLError;
+import graphql.introspection.IntrospectionQuery;
+import graphql.schema.GraphQLSchema;
+import graphql.schema.idl.RuntimeWiring;
+import graphql.schema.idl.SchemaGenerator;
+import graphql.schema.idl.SchemaParser;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class QueryCostInstrumentationTest {
+    private GraphQL graphQL;
+
+    @Before
+    public void setup() {
+        String sdl = "type Query { allItems(offset: Int = 0, limit: Int = 100): [Job] }\n"
+            + "type Job { name: String builds: [Run] parent: Job }\n"
+            + "type Run { number: Int actions: [Action] }\n"
+            + "type Action { name: String }\n";
+        GraphQLSchema schema = new SchemaGenerator().makeExecutableSchema(
+            new SchemaParser().parse(sdl),
+            RuntimeWiring.newRuntimeWiring()
+                .type("Query", builder -> builder.dataFetcher("allItems", env -> Collections.emptyList()))
+                .build()
+        );
+        graphQL = GraphQL.newGraphQL(schema).instrumentation(new QueryCostInstrumentation()).build();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> getCost(Map<?, ?> extensions) {
+        return (Map<String, Object>) extensions.get(QueryCostInstrumentation.EXTENSION);
+    }
+
+    @Test
+    public void costIsReported() {
+        ExecutionResult result = graphQL.execute("query { allItems(limit: 5) { name builds { number } } }");
+        assertEquals(Collections.emptyList(), result.getErrors());
+        // allItems, then 5 names and 5 builds lists of 100 numbers
+        assertEquals(1L + 5 + 5 + 5 * 100, getCost(result.getExtensions()).get("requested"));
+        assertEquals(3, getCost(result.getExtensions()).get("depth"));
+    }
+
+    @Test
+    public void expensiveQueriesAreRejected() {
+        ExecutionResult result = graphQL.execute("query { allItems(limit: 100000) { builds { actions { name } } } }");
+        assertNull(result.getData());
+        assertEquals(1, result.getErrors().size());
+        GraphQLError error = result.getErrors().get(0);
+        assertTrue(error.getMessage(), error.getMessage().startsWith("Query cost "));
+        assertEquals("QUERY_TOO_EXPENSIVE", error.getExtensions().get("code"));
+        assertEquals(QueryCostInstrumentation.MAX_COST, getCost(error.getExtensions()).get("maximum"));
+    }
+
+    @Test
+    public void batchesAreLimitedAsAWhole() {
+        String query = "query { allItems(limit: 5) { name builds { number } } }";
+        long maxCost = QueryCostInstrumentation.MAX_COST;
+        RequestContext context;
+        try {
+            // room for the first operation, but not for the second one as well
+            QueryCostInstrumentation.MAX_COST = 800;
+            context = new RequestContext();
+        } finally {
+            QueryCostInstrumentation.MAX_COST = maxCost;
+        }
+
+        ExecutionResult first = graphQL.execute(ExecutionInput.newExecutionInput().query(query).context(context).build());
+        assertEquals(Collections.emptyList(), first.getErrors());
+
+        ExecutionResult second = graphQL.execute(ExecutionInput.newExecutionInput().query(query).context(context).build());
+        assertNull(second.getData());
+        assertEquals(1, second.getErrors().size());
+        GraphQLError error = second.getErrors().get(0);
+        assertEquals("QUERY_TOO_EXPENSIVE", error.getExtensions().get("code"));
+        assertEquals(800L - 511, getCost(error.getExtensions()).get("left"));
+    }
+
+    @Test
+    public void deepQueriesAreRejected() {
+        StringBuilder query = new StringBuilder("query { allItems(limit: 1) { ");
+        for (int i = 0; i < QueryCostInstrumentation.MAX_DEPTH; i++) {
+            query.append("parent { ");
+        }
+        query.append("name");
+        for (int i = 0; i <= QueryCostInstrumentation.MAX_DEPTH; i++) {
+            query.append(" }");
+        }
+        query.append(" }");
+
+        ExecutionResult result = graphQL.execute(query.toString());
+        assertEquals(1, result.getErrors().size());
+        assertTrue(result.getErrors().get(0).getMessage().startsWith("Query depth "));
+    }
+
+    @Test
+    public void introspectionIsFree() {
+        ExecutionResult result = graphQL.execute(IntrospectionQuery.INTROSPECTION_QUERY);
+        assertEquals(Collections.emptyList(), result.getErrors());
+        assertEquals(0L, getCost(result.getExtensions()).get("requested"));
+    }
+}
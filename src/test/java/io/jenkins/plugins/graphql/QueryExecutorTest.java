@@ -0,0 +1,149 @@
+package io.jenkins.plugins.graphql;
+
+import org.junit.After;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class QueryExecutorTest {
+    private final int maxConcurrency = QueryExecutor.MAX_CONCURRENCY;
+    private final int queueDepth = QueryExecutor.QUEUE_DEPTH;
+    private final long timeoutMs = QueryExecutor.TIMEOUT_MS;
+    private final ScheduledExecutorService container = Executors.newSingleThreadScheduledExecutor();
+
+    @After
+    public void restore() {
+        QueryExecutor.MAX_CONCURRENCY = maxConcurrency;
+        QueryExecutor.QUEUE_DEPTH = queueDepth;
+        QueryExecutor.TIMEOUT_MS = timeoutMs;
+        container.shutdownNow();
+    }
+
+    /**
+     * Starts async mode on a request, timing it out like a container would.
+     */
+    private AsyncContext startAsync(HttpServletResponse response) {
+        AsyncContext context = Mockito.mock(AsyncContext.class);
+        when(context.getResponse()).thenReturn(response);
+        Mockito.doAnswer(invocation -> {
+            AsyncListener listener = invocation.getArgument(0);
+            container.schedule(() -> {
+                listener.onTimeout(new AsyncEvent(context));
+                return null;
+            }, QueryExecutor.TIMEOUT_MS, TimeUnit.MILLISECONDS);
+            return null;
+        }).when(context).addListener(Mockito.any(AsyncListener.class));
+        return context;
+    }
+
+    @Test
+    public void rejectsWhenSaturated() throws InterruptedException {
+        QueryExecutor.MAX_CONCURRENCY = 2;
+        QueryExecutor.QUEUE_DEPTH = 1;
+        QueryExecutor executor = new QueryExecutor();
+
+        CountDownLatch started = new CountDownLatch(2);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch finished = new CountDownLatch(3);
+        Runnable query = () -> {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            finished.countDown();
+        };
+        executor.execute(query);
+        executor.execute(query);
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+        executor.execute(query);
+
+        assertEquals(2, executor.getActive());
+        assertEquals(1, executor.getQueueLength());
+        try {
+            executor.execute(query);
+            fail("should have been turned away");
+        } catch (RejectedExecutionException e) {
+            assertEquals(1, executor.getRejected());
+        }
+
+        release.countDown();
+        assertTrue(finished.await(10, TimeUnit.SECONDS));
+        // the counter is bumped after the query itself returns
+        long deadline = System.currentTimeMillis() + 10000;
+        while (executor.getCompleted() < 3 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(3, executor.getCompleted());
+    }
+
+    @Test
+    public void timesOut() throws InterruptedException {
+        QueryExecutor.MAX_CONCURRENCY = 1;
+        QueryExecutor.QUEUE_DEPTH = 1;
+        QueryExecutor.TIMEOUT_MS = 100;
+        QueryExecutor executor = new QueryExecutor();
+
+        HttpServletResponse runningResponse = Mockito.mock(HttpServletResponse.class);
+        AsyncContext runningContext = startAsync(runningResponse);
+        HttpServletResponse queuedResponse = Mockito.mock(HttpServletResponse.class);
+        AsyncContext queuedContext = startAsync(queuedResponse);
+
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch finished = new CountDownLatch(1);
+        AtomicReference<Exception> lateWrite = new AtomicReference<>();
+        executor.execute(executor.start(runningContext), rsp -> {
+            try {
+                release.await();
+                rsp.getOutputStream().write('{');
+            } catch (InterruptedException | IOException | RuntimeException e) {
+                lateWrite.set(e);
+            } finally {
+                finished.countDown();
+            }
+        });
+        AtomicBoolean queuedRan = new AtomicBoolean();
+        executor.execute(executor.start(queuedContext), rsp -> queuedRan.set(true));
+
+        verify(runningContext, timeout(10000)).complete();
+        verify(queuedContext, timeout(10000)).complete();
+        verify(runningResponse).sendError(eq(HttpServletResponse.SC_SERVICE_UNAVAILABLE), anyString());
+        verify(queuedResponse).sendError(eq(HttpServletResponse.SC_SERVICE_UNAVAILABLE), anyString());
+        assertEquals(2, executor.getTimedOut());
+
+        // the running query finishes late, and must neither write nor complete again
+        release.countDown();
+        assertTrue(finished.await(10, TimeUnit.SECONDS));
+        assertTrue(lateWrite.get() instanceof IOException || lateWrite.get() instanceof IllegalStateException);
+        Thread.sleep(100);
+        verify(runningContext, times(1)).complete();
+        verify(runningResponse, never()).getOutputStream();
+        assertFalse(queuedRan.get());
+    }
+}
@@ -0,0 +1,186 @@
+package io.jenkins.plugins.graphql;
+
+import graphql.Scalars;
+import graphql.execution.ExecutionStepInfo;
+import graphql.execution.ResultPath;
+import graphql.schema.DataFetchingEnvironmentImpl;
+import hudson.model.Action;
+import hudson.model.Computer;
+import hudson.model.Item;
+import org.acegisecurity.Authentication;
+import org.acegisecurity.GrantedAuthority;
+import org.acegisecurity.GrantedAuthorityImpl;
+import org.junit.After;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Collections;
+import java.util.EnumSet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.when;
+
+public class ResponseCacheTest {
+    private final long ttl = ResponseCache.TTL_MS;
+
+    @After
+    public void restore() {
+        ResponseCache.TTL_MS = ttl;
+    }
+
+    private static Authentication user(String name, String... groups) {
+        Authentication authentication = Mockito.mock(Authentication.class);
+        when(authentication.getName()).thenReturn(name);
+        GrantedAuthority[] authorities = new GrantedAuthority[groups.length];
+        for (int i = 0; i < groups.length; i++) {
+            authorities[i] = new GrantedAuthorityImpl(groups[i]);
+        }
+        when(authentication.getAuthorities()).thenReturn(authorities);
+        return authentication;
+    }
+
+    private static GraphQLRequest request(String query) {
+        return new GraphQLRequest(query, null, Collections.singletonMap("a", 1), Collections.emptyMap());
+    }
+
+    private static ResponseCache.Dependency getDependency(Object source) {
+        return ResponseCache.DependencyInstrumentation.getDependency(DataFetchingEnvironmentImpl.newDataFetchingEnvironment()
+            .source(source)
+            .executionStepInfo(ExecutionStepInfo.newExecutionStepInfo()
+                .type(Scalars.GraphQLString)
+                .path(ResultPath.rootPath().segment("computer").segment("displayName"))
+                .build())
+            .build());
+    }
+
+    @Test
+    public void dependencies() {
+        assertEquals(ResponseCache.Dependency.ITEMS, getDependency(Mockito.mock(Item.class)));
+        // not tracked on their own, so anything may have changed them
+        assertEquals(ResponseCache.Dependency.OTHER, getDependency(Mockito.mock(Computer.class)));
+        // covered by what they are part of
+        assertNull(getDependency(Mockito.mock(Action.class)));
+        assertNull(getDependency(Collections.emptyMap()));
+    }
+
+    @Test
+    public void normalize() {
+        assertEquals(
+            "query{allItems(limit:5){name}}",
+            ResponseCache.normalize("query {\n  allItems(limit: 5) { # the first few\n    name,\n  }\n}\n")
+        );
+        assertEquals("{a(b:\"x  , # y\")}", ResponseCache.normalize("{ a(b: \"x  , # y\") }"));
+        assertEquals("{a(b:\"\"\"x \\\"\"\" #y\"\"\")}", ResponseCache.normalize("{ a(b: \"\"\"x \\\"\"\" #y\"\"\") }"));
+        assertEquals("query Q($a:Int){... on B{c d}}", ResponseCache.normalize("query Q($a: Int) { ... on B { c d } }"));
+    }
+
+    @Test
+    public void keys() {
+        ResponseCache cache = new ResponseCache();
+        assertEquals(
+            cache.getKey(request("{ a b }"), user("alice")),
+            cache.getKey(request("{\n  a\n  b\n}"), user("alice"))
+        );
+        assertNotEquals(
+            cache.getKey(request("{ a b }"), user("alice")),
+            cache.getKey(request("{ a b }"), user("bob"))
+        );
+        assertNotEquals(
+            cache.getKey(request("{ a b }"), user("alice")),
+            cache.getKey(new GraphQLRequest("{ a b }", null, Collections.singletonMap("a", 2), Collections.emptyMap()), user("alice"))
+        );
+        assertNotEquals(
+            cache.getKey(request("{ a b }"), user("alice", "authenticated")),
+            cache.getKey(request("{ a b }"), user("alice", "authenticated", "admins"))
+        );
+        assertEquals(
+            cache.getKey(request("{ a b }"), user("alice", "admins", "authenticated")),
+            cache.getKey(request("{ a b }"), user("alice", "authenticated", "admins"))
+        );
+    }
+
+    @Test
+    public void invalidatedByChanges() {
+        ResponseCache cache = new ResponseCache();
+        cache.put("items", "{}", EnumSet.of(ResponseCache.Dependency.ITEMS), cache.getGenerations());
+        cache.put("users", "{}", EnumSet.of(ResponseCache.Dependency.USERS), cache.getGenerations());
+        cache.put("other", "{}", EnumSet.of(ResponseCache.Dependency.OTHER), cache.getGenerations());
+
+        cache.invalidate(ResponseCache.Dependency.USERS);
+        assertEquals("{}", cache.get("items"));
+        assertNull(cache.get("users"));
+        assertNull(cache.get("other"));
+        assertEquals(2, cache.getInvalidations());
+    }
+
+    @Test
+    public void changesWhileRunningAreNotMissed() {
+        ResponseCache cache = new ResponseCache();
+        long[] generations = cache.getGenerations();
+        cache.invalidate(ResponseCache.Dependency.ITEMS);
+        cache.put("items", "{}", EnumSet.of(ResponseCache.Dependency.ITEMS), generations);
+        assertNull(cache.get("items"));
+    }
+
+    @Test
+    public void etagFollowsResponse() {
+        ResponseCache cache = new ResponseCache();
+        cache.put("a", "{\"a\":1}", EnumSet.of(ResponseCache.Dependency.ITEMS), cache.getGenerations());
+        cache.put("b", "{\"a\":2}", EnumSet.of(ResponseCache.Dependency.ITEMS), cache.getGenerations());
+        ResponseCache.CachedResponse a = cache.getResponse("a");
+        assertEquals(ResponseCache.toETag("{\"a\":1}"), a.getETag());
+        assertSame(a.getETag(), cache.getResponse("a").getETag());
+        assertNotEquals(a.getETag(), cache.getResponse("b").getETag());
+    }
+
+    @Test
+    public void capturesShortResponses() throws IOException {
+        StringWriter sent = new StringWriter();
+        ResponseCache.CapturingWriter capture = new ResponseCache.CapturingWriter(sent);
+        capture.write("{\"a\":");
+        capture.write('1');
+        capture.write("}".toCharArray());
+        assertEquals("{\"a\":1}", sent.toString());
+        assertEquals("{\"a\":1}", capture.getCaptured());
+    }
+
+    @Test
+    public void dropsTheCopyOfLongResponses() throws IOException {
+        StringWriter sent = new StringWriter();
+        ResponseCache.CapturingWriter capture = new ResponseCache.CapturingWriter(sent);
+        char[] chunk = new char[1024];
+        long written = 0;
+        while (written <= ResponseCache.getMaxResponseChars()) {
+            capture.write(chunk);
+            written += chunk.length;
+        }
+        assertNull(capture.getCaptured());
+        assertEquals(written, sent.getBuffer().length());
+    }
+
+    @Test
+    public void expires() {
+        ResponseCache cache = new ResponseCache();
+        ResponseCache.TTL_MS = -1;
+        cache.put("items", "{}", EnumSet.of(ResponseCache.Dependency.ITEMS), cache.getGenerations());
+        assertNull(cache.get("items"));
+    }
+
+    @Test
+    public void boundedBySize() {
+        ResponseCache cache = new ResponseCache();
+        String response = new String(new char[(int) (ResponseCache.MAX_CHARS / 20)]).replace('\0', 'x');
+        for (int i = 0; i < 30; i++) {
+            cache.put("key" + i, response, EnumSet.of(ResponseCache.Dependency.ITEMS), cache.getGenerations());
+        }
+        assertEquals(20, cache.getSize());
+        assertEquals(10, cache.getEvictions());
+        assertNull(cache.get("key0"));
+        assertEquals(response, cache.get("key29"));
+    }
+}
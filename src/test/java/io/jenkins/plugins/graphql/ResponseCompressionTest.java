@@ -0,0 +1,117 @@
+package io.jenkins.plugins.graphql;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ResponseCompressionTest {
+    private final ByteArrayOutputStream sent = new ByteArrayOutputStream();
+
+    private HttpServletResponse response() throws IOException {
+        HttpServletResponse rsp = Mockito.mock(HttpServletResponse.class);
+        when(rsp.getOutputStream()).thenReturn(new ServletOutputStream() {
+            @Override
+            public boolean isReady() {
+                return true;
+            }
+
+            @Override
+            public void setWriteListener(WriteListener writeListener) {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public void write(int b) {
+                sent.write(b);
+            }
+        });
+        return rsp;
+    }
+
+    private static HttpServletRequest request(String acceptEncoding) {
+        HttpServletRequest req = Mockito.mock(HttpServletRequest.class);
+        when(req.getHeader("Accept-Encoding")).thenReturn(acceptEncoding);
+        return req;
+    }
+
+    private static byte[] body(int size) {
+        StringBuilder sb = new StringBuilder(size);
+        while (sb.length() < size) {
+            sb.append("{\"name\":\"job\",\"color\":\"blue\"},");
+        }
+        return sb.substring(0, size).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void negotiate() {
+        assertNull(ResponseCompression.negotiate(null));
+        assertNull(ResponseCompression.negotiate("identity"));
+        assertEquals(ResponseCompression.Encoding.GZIP, ResponseCompression.negotiate("gzip, deflate, br"));
+        assertEquals(ResponseCompression.Encoding.DEFLATE, ResponseCompression.negotiate("gzip;q=0.5, deflate"));
+        assertEquals(ResponseCompression.Encoding.DEFLATE, ResponseCompression.negotiate("gzip;q=0, *"));
+        assertEquals(ResponseCompression.Encoding.GZIP, ResponseCompression.negotiate("*"));
+        assertNull(ResponseCompression.negotiate("*;q=0"));
+    }
+
+    @Test
+    public void etagPerEncoding() {
+        assertEquals("\"abc\"", ResponseCompression.toETag("\"abc\"", null));
+        assertEquals("\"abc-gzip\"", ResponseCompression.toETag("\"abc\"", ResponseCompression.Encoding.GZIP));
+    }
+
+    @Test
+    public void smallResponsesAreSentAsTheyAre() throws IOException {
+        HttpServletResponse rsp = response();
+        byte[] body = body(ResponseCompression.MIN_BYTES - 1);
+        try (OutputStream out = ResponseCompression.get().open(request("gzip"), rsp, -1)) {
+            out.write(body);
+        }
+        verify(rsp, never()).setHeader(Mockito.eq("Content-Encoding"), Mockito.anyString());
+        assertArrayEquals(body, sent.toByteArray());
+    }
+
+    @Test
+    public void largeResponsesAreCompressed() throws IOException {
+        HttpServletResponse rsp = response();
+        byte[] body = body(ResponseCompression.MIN_BYTES * 10);
+        try (OutputStream out = ResponseCompression.get().open(request("gzip"), rsp, -1)) {
+            for (byte b : body) {
+                out.write(b);
+            }
+        }
+        verify(rsp).setHeader("Content-Encoding", "gzip");
+        assertTrue(sent.size() < body.length / 10);
+        assertArrayEquals(body, IOUtils.toByteArray(new GZIPInputStream(new ByteArrayInputStream(sent.toByteArray()))));
+    }
+
+    @Test
+    public void knownSizeDeflate() throws IOException {
+        HttpServletResponse rsp = response();
+        byte[] body = body(ResponseCompression.MIN_BYTES);
+        try (OutputStream out = ResponseCompression.get().open(request("deflate"), rsp, body.length)) {
+            out.write(body);
+        }
+        verify(rsp).setHeader("Content-Encoding", "deflate");
+        assertArrayEquals(body, IOUtils.toByteArray(new InflaterInputStream(new ByteArrayInputStream(sent.toByteArray()))));
+    }
+}
@@ -0,0 +1,115 @@
+package io.jenkins.plugins.graphql;
+
+import graphql.GraphQL;
+import graphql.schema.GraphQLSchema;
+import hudson.DescriptorExtensionList;
+import hudson.model.FreeStyleProject;
+import hudson.model.TopLevelItemDescriptor;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+import org.kohsuke.stapler.export.Exported;
+import org.kohsuke.stapler.export.ExportedBean;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class SchemaSnapshotTest {
+    @Rule
+    public JenkinsRule j = new JenkinsRule();
+
+    @Before
+    public void setup() {
+        ClassUtils.setAllClassesCache(MockClassUtils.mock_getAllClassesList());
+    }
+
+    @Test
+    public void roundTrip() {
+        Builders builder = new Builders();
+        builder.addExtraTopLevelClasses(Collections.singletonList(FreeStyleProject.class));
+        GraphQLSchema original = builder.buildSchema();
+
+        String fingerprint = SchemaSnapshot.computeFingerprint(j.jenkins);
+        new SchemaSnapshot(fingerprint, builder).save(j.jenkins);
+
+        SchemaSnapshot snapshot = SchemaSnapshot.load(j.jenkins, fingerprint);
+        assertNotNull(snapshot);
+        assertEquals(builder.getSchemaDefinition(), snapshot.getSchemaDefinition());
+
+        Builders fromSnapshot = new Builders();
+        GraphQLSchema restored = fromSnapshot.buildSchema(snapshot);
+        assertNotNull(restored);
+        assertEquals(original.getTypeMap().keySet(), restored.getTypeMap().keySet());
+        assertEquals(builder.getPropertyMap(), fromSnapshot.getPropertyMap());
+        assertEquals(builder.getTypeDefinitions(), fromSnapshot.getTypeDefinitions());
+        assertEquals(0, fromSnapshot.getIntrospectedTypeCount());
+    }
+
+    @Test
+    public void rebuildAfterSnapshotOnlyBuildsNewTypes() throws Exception {
+        Builders builder = new Builders();
+        builder.addExtraTopLevelClasses(
+            DescriptorExtensionList.lookup(TopLevelItemDescriptor.class).stream()
+                .map(d -> d.clazz)
+                .collect(Collectors.toList())
+        );
+        builder.buildSchema();
+        new SchemaSnapshot(SchemaSnapshot.computeFingerprint(j.jenkins), builder).save(j.jenkins);
+
+        long delay = SchemaManager.REBUILD_DELAY_MS;
+        SchemaManager.REBUILD_DELAY_MS = 0;
+        try {
+            SchemaManager manager = new SchemaManager();
+            manager.scheduleRebuild();
+            GraphQL booted = manager.awaitGraphQL(1, TimeUnit.MINUTES);
+            assertNotNull(booted);
+            Builders restored = manager.getBuilders();
+            assertNotNull(restored);
+            assertEquals(0, restored.getIntrospectedTypeCount());
+            int restoredTypes = restored.getBuiltTypeCount();
+            assertEquals(builder.getBuiltTypeCount(), restoredTypes);
+
+            // what a dynamically loaded plugin would bring along
+            restored.addExtraTopLevelClasses(Collections.singletonList(Dashboard.class));
+            manager.scheduleRebuild();
+            long deadline = System.currentTimeMillis() + TimeUnit.MINUTES.toMillis(1);
+            while (manager.getGraphQL() == booted && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertNotSame(booted, manager.getGraphQL());
+            assertSame(restored, manager.getBuilders());
+
+            assertNotNull(manager.getGraphQL().getGraphQLSchema().getType(ClassUtils.getGraphQLClassName(Dashboard.class)));
+            assertTrue(restored.getIntrospectedTypeCount() > 0);
+            assertEquals(restored.getBuiltTypeCount() - restoredTypes, restored.getIntrospectedTypeCount());
+        } finally {
+            SchemaManager.REBUILD_DELAY_MS = delay;
+        }
+    }
+
+    @ExportedBean
+    public static class Dashboard {
+        @Exported
+        public String getTitle() {
+            return "title";
+        }
+    }
+
+    @Test
+    public void fingerprintMismatch() {
+        Builders builder = new Builders();
+        builder.buildSchema();
+        new SchemaSnapshot("old", builder).save(j.jenkins);
+
+        assertNull(SchemaSnapshot.load(j.jenkins, SchemaSnapshot.computeFingerprint(j.jenkins)));
+    }
+}
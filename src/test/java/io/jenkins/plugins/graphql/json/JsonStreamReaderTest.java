@@ -0,0 +1,80 @@
+package io.jenkins.plugins.graphql.json;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+public class JsonStreamReaderTest {
+    private static Object read(String json) throws IOException {
+        return new JsonStreamReader(new StringReader(json)).readDocument();
+    }
+
+    private static void assertInvalid(String json) throws IOException {
+        try {
+            read(json);
+            fail("parsed " + json);
+        } catch (JsonParseException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void values() throws IOException {
+        assertNull(read(" null "));
+        assertEquals(true, read("true"));
+        assertEquals(42, read("42"));
+        assertEquals(-3000000000L, read("-3000000000"));
+        assertEquals(new BigInteger("123456789012345678901234567890"), read("123456789012345678901234567890"));
+        assertEquals(1.5e3, read("1.5e3"));
+        assertEquals("a\"b\\c\n\u00e9/", read("\"a\\\"b\\\\c\\n\\u00e9\\/\""));
+    }
+
+    @Test
+    public void document() throws IOException {
+        Map<String, Object> variables = new LinkedHashMap<>();
+        variables.put("name", "job");
+        variables.put("ids", Arrays.asList(1, 2, null));
+        variables.put("empty", Collections.emptyMap());
+
+        Map<String, Object> expected = new LinkedHashMap<>();
+        expected.put("query", "query ($name: String) { allItems { id } }");
+        expected.put("variables", variables);
+
+        assertEquals(expected, read("{\"query\": \"query ($name: String) { allItems { id } }\",\n"
+            + "  \"variables\": {\"name\": \"job\", \"ids\": [1, 2, null], \"empty\": {}}}"));
+    }
+
+    @Test
+    public void longString() throws IOException {
+        char[] chars = new char[10000];
+        Arrays.fill(chars, 'x');
+        String value = new String(chars);
+        assertEquals(value, read("\"" + value + "\""));
+    }
+
+    @Test
+    public void invalid() throws IOException {
+        assertInvalid("");
+        assertInvalid("{");
+        assertInvalid("{\"a\" 1}");
+        assertInvalid("[1,]");
+        assertInvalid("\"unterminated");
+        assertInvalid("tru");
+        assertInvalid("{} {}");
+        assertInvalid("-");
+
+        char[] deep = new char[JsonStreamReader.MAX_DEPTH + 1];
+        Arrays.fill(deep, '[');
+        assertInvalid(new String(deep));
+    }
+}
@@ -0,0 +1,69 @@
+package io.jenkins.plugins.graphql.json;
+
+import net.sf.json.JSONObject;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.GregorianCalendar;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+
+public class JsonStreamWriterTest {
+    private static String write(Object value) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (JsonStreamWriter writer = new JsonStreamWriter(out)) {
+            writer.write(value);
+        }
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void scalars() throws IOException {
+        assertEquals("null", write(null));
+        assertEquals("true", write(true));
+        assertEquals("42", write(42));
+        assertEquals("1.5", write(1.5));
+        assertEquals("null", write(Double.NaN));
+        assertEquals("\"String\"", write(String.class));
+
+        GregorianCalendar calendar = new GregorianCalendar();
+        calendar.setTimeInMillis(1559344577604L);
+        assertEquals("\"2019-05-31T23:16:17.604Z\"", write(calendar));
+    }
+
+    @Test
+    public void escaping() throws IOException {
+        assertEquals("\"a\\\"b\\\\c\\nd\\u0001e\\u2028f\"", write("a\"b\\c\nd\u0001e\u2028f"));
+        assertEquals("\"caf\u00e9 \u2603\"", write("caf\u00e9 \u2603"));
+    }
+
+    @Test
+    public void sameAsJsonLib() throws IOException {
+        Map<String, Object> nested = new LinkedHashMap<>();
+        nested.put("name", "job \"one\"");
+        nested.put("number", 12);
+        nested.put("building", false);
+        nested.put("nothing", null);
+
+        Map<String, Object> data = new LinkedHashMap<>();
+        data.put("allItems", Arrays.asList(nested, Collections.emptyMap()));
+        data.put("empty", new String[0]);
+        Map<String, Object> response = Collections.singletonMap("data", data);
+
+        assertEquals(JSONObject.fromObject(response), JSONObject.fromObject(write(response)));
+    }
+
+    @Test
+    public void largerThanBuffer() throws IOException {
+        char[] chars = new char[JsonStreamWriter.BUFFER_SIZE * 3];
+        Arrays.fill(chars, 'x');
+        String value = new String(chars);
+        assertEquals("\"" + value + "\"", write(value));
+    }
+}